@@ -0,0 +1,101 @@
+package com.smoothresources.smoothbase.benchmark;
+
+import com.smoothresources.smoothbase.common.messenger.codec.PayloadCodec;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message sent by the benchmarks, carrying the time it was sent at and filler data of a chosen size.
+ */
+public class BenchmarkPayload {
+
+    private long sentAt;
+    private String data;
+
+    /**
+     * Creates a new BenchmarkPayload.
+     *
+     * @param size The size of the filler data in bytes.
+     */
+    public BenchmarkPayload(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Payload size must not be negative");
+        }
+
+        char[] chars = new char[size];
+        // Not a single repeated character, which would compress unrealistically well
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) ('a' + (i * 31 + i / 7) % 26);
+        }
+
+        this.data = new String(chars);
+    }
+
+    private BenchmarkPayload(long sentAt, @NotNull String data) {
+        this.sentAt = sentAt;
+        this.data = data;
+    }
+
+    /**
+     * Gets the time the payload was sent at.
+     *
+     * @return The value of {@link System#nanoTime()} when the payload was sent.
+     */
+    public long getSentAt() {
+        return sentAt;
+    }
+
+    /**
+     * Sets the time the payload is sent at.
+     *
+     * @param sentAt The value of {@link System#nanoTime()} when the payload is sent.
+     */
+    public void setSentAt(long sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    /**
+     * Gets the filler data.
+     *
+     * @return The filler data.
+     */
+    @NotNull
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Binary format of the payload, used by the binary codecs.
+     */
+    public static class Codec implements PayloadCodec<BenchmarkPayload> {
+
+        @NotNull
+        @Override
+        public byte[] encode(@NotNull BenchmarkPayload payload) {
+            byte[] data = payload.data.getBytes(StandardCharsets.UTF_8);
+            byte[] encoded = new byte[8 + data.length];
+            for (int i = 0; i < 8; i++) {
+                encoded[i] = (byte) (payload.sentAt >>> (56 - i * 8));
+            }
+
+            System.arraycopy(data, 0, encoded, 8, data.length);
+            return encoded;
+        }
+
+        @NotNull
+        @Override
+        public BenchmarkPayload decode(@NotNull byte[] data, int offset, int length) {
+            if (length < 8) {
+                throw new IllegalArgumentException("Truncated payload");
+            }
+
+            long sentAt = 0;
+            for (int i = 0; i < 8; i++) {
+                sentAt = sentAt << 8 | data[offset + i] & 0xFF;
+            }
+
+            return new BenchmarkPayload(sentAt, new String(data, offset + 8, length - 8, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.smoothresources.smoothbase.benchmark;
+
+import com.smoothresources.smoothbase.common.messenger.codec.Envelope;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageCodec;
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the encoding and decoding of a request by each codec, isolated from the transport and the dispatch.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    @Param({"JSON", "BINARY", "COMPRESSED"})
+    public MessengerCluster.Codec codec;
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    private MessageCodec messageCodec;
+    private Envelope envelope;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        Serializer serializer = new Serializer.Builder()
+                .registerDefaultAdapters(List.of(BenchmarkPayload.class.getName()))
+                .build();
+        messageCodec = codec.create(serializer);
+        envelope = new Envelope(Envelope.Kind.REQUEST, BenchmarkPayload.class, UUID.randomUUID(), "benchmark-0",
+                new BenchmarkPayload(payloadSize));
+        encoded = messageCodec.encode(envelope);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return messageCodec.encode(envelope);
+    }
+
+    @Benchmark
+    public Envelope decode() {
+        return messageCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public int routingKey() {
+        return messageCodec.routingKey(encoded);
+    }
+}
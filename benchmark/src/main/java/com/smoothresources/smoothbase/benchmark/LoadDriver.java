@@ -0,0 +1,193 @@
+package com.smoothresources.smoothbase.benchmark;
+
+import com.smoothresources.smoothbase.common.task.LatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Standalone load generator, broadcasting messages for a while (as fast as possible or at a fixed rate) and then
+ * sending conversations, and reporting the throughput and the latency percentiles. Unlike the JMH benchmarks, it
+ * keeps messages in flight, so the latencies include the queueing in the messengers under load.
+ * <p>
+ * Options are given as {@code --name=value}:
+ * <ul>
+ *     <li>{@code transport}: LOOPBACK (default) or REDIS</li>
+ *     <li>{@code codec}: JSON (default), BINARY or COMPRESSED</li>
+ *     <li>{@code payload-size}: size of the payloads in bytes (default 1024)</li>
+ *     <li>{@code fanout}: number of receivers (default 1)</li>
+ *     <li>{@code warmup}: warm-up duration in seconds (default 3)</li>
+ *     <li>{@code duration}: measured duration in seconds (default 10)</li>
+ *     <li>{@code rate}: messages sent per second, or 0 to send as fast as possible (default 0)</li>
+ *     <li>{@code window}: maximum number of messages in flight (default 1000)</li>
+ *     <li>{@code conversations}: number of requests and of gathers sent after the broadcasts (default 1000)</li>
+ *     <li>{@code redis-host} and {@code redis-port}: Redis server of the REDIS transport (default localhost:6379)</li>
+ * </ul>
+ */
+public class LoadDriver {
+
+    private static final Set<String> OPTIONS = Set.of("transport", "codec", "payload-size", "fanout", "warmup",
+            "duration", "rate", "window", "conversations", "redis-host", "redis-port");
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final MessengerCluster cluster;
+    private final BenchmarkPayload payload;
+    private final int rate;
+    private final int window;
+
+    private LoadDriver(@NotNull MessengerCluster cluster, int payloadSize, int rate, int window) {
+        this.cluster = cluster;
+        this.payload = new BenchmarkPayload(payloadSize);
+        this.rate = rate;
+        this.window = window;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseOptions(args);
+        MessengerCluster.Transport transport = MessengerCluster.Transport.valueOf(
+                options.getOrDefault("transport", "LOOPBACK").toUpperCase(Locale.ROOT));
+        MessengerCluster.Codec codec = MessengerCluster.Codec.valueOf(
+                options.getOrDefault("codec", "JSON").toUpperCase(Locale.ROOT));
+        int payloadSize = intOption(options, "payload-size", 1024);
+        int fanout = intOption(options, "fanout", 1);
+        int warmup = intOption(options, "warmup", 3);
+        int duration = intOption(options, "duration", 10);
+        int rate = intOption(options, "rate", 0);
+        int window = intOption(options, "window", 1000);
+        int conversations = intOption(options, "conversations", 1000);
+
+        System.out.printf("%s transport, %s codec, %d-byte payloads, fan-out %d, %s%n", transport, codec,
+                payloadSize, fanout, rate == 0 ? "unthrottled" : rate + " messages/s");
+
+        try (MessengerCluster cluster = new MessengerCluster(transport, codec, fanout,
+                options.getOrDefault("redis-host", "localhost"), intOption(options, "redis-port", 6379))) {
+            cluster.awaitReady(TIMEOUT);
+            LoadDriver driver = new LoadDriver(cluster, payloadSize, rate, window);
+
+            driver.broadcast(warmup);
+            cluster.getLatency().reset();
+            driver.broadcast(duration);
+            driver.sendConversations(conversations);
+        }
+    }
+
+    private void broadcast(int seconds) {
+        int fanout = cluster.getFanout();
+        long receivedBefore = cluster.getReceivedCount();
+        long droppedBefore = cluster.getDroppedCount();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long sent = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            if (rate > 0) {
+                long sendAt = start + sent * TimeUnit.SECONDS.toNanos(1) / rate;
+                if (sendAt > now) {
+                    LockSupport.parkNanos(sendAt - now);
+                    continue;
+                }
+            }
+
+            // Waits while too many messages are in flight, instead of overflowing the dispatch queues
+            if (sent - (cluster.getReceivedCount() - receivedBefore) / fanout >= window) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            cluster.publish(payload);
+            sent++;
+        }
+
+        long publishNanos = System.nanoTime() - start;
+        cluster.awaitReceived(receivedBefore + sent * fanout, TIMEOUT);
+        long deliverNanos = System.nanoTime() - start;
+        long received = cluster.getReceivedCount() - receivedBefore;
+
+        System.out.printf("Broadcast: %d sent (%.0f/s), %d received (%.0f/s), %d lost, %d dropped%n", sent,
+                perSecond(sent, publishNanos), received, perSecond(received, deliverNanos),
+                sent * fanout - received, cluster.getDroppedCount() - droppedBefore);
+        printPercentiles("  End-to-end latency", cluster.getLatency());
+    }
+
+    private void sendConversations(int count) {
+        if (count == 0) {
+            return;
+        }
+
+        LatencyHistogram roundTrips = new LatencyHistogram();
+        LatencyHistogram gathers = new LatencyHistogram();
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            cluster.roundTrip(payload, TIMEOUT);
+            roundTrips.record(System.nanoTime() - start);
+        }
+
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            cluster.gather(payload, TIMEOUT);
+            gathers.record(System.nanoTime() - start);
+        }
+
+        printPercentiles("Request round trip", roundTrips);
+        printPercentiles("Gather round trip", gathers);
+    }
+
+    private static void printPercentiles(@NotNull String name, @NotNull LatencyHistogram histogram) {
+        StringBuilder line = new StringBuilder(name).append(" (us, bucket upper bounds):");
+        for (double percentile : PERCENTILES) {
+            String label = percentile % 1 == 0 ? Long.toString((long) percentile) : Double.toString(percentile);
+            line.append(" p").append(label).append("<=").append(histogram.getPercentileMicros(percentile));
+        }
+
+        System.out.println(line);
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return count * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+
+    @NotNull
+    private static Map<String, String> parseOptions(@NotNull String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+
+            String name = arg.substring(2, separator);
+            if (!OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+
+            options.put(name, arg.substring(separator + 1));
+        }
+
+        return options;
+    }
+
+    private static int intOption(@NotNull Map<String, String> options, @NotNull String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0) {
+                throw new IllegalArgumentException("Option " + name + " must not be negative");
+            }
+
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " must be a number: " + value);
+        }
+    }
+}
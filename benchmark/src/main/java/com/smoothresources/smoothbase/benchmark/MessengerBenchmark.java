@@ -0,0 +1,97 @@
+package com.smoothresources.smoothbase.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a messenger delivering to a number of receivers: broadcast throughput (counting a message once it was
+ * handled by every receiver), and round-trip time of a request to one server and of a request gathered from every
+ * server.
+ * <p>
+ * The Redis transport needs a Redis server, at {@code localhost:6379} unless set with the {@code redis.host} and
+ * {@code redis.port} system properties, e.g.
+ * {@code java -jar benchmark/target/benchmarks.jar MessengerBenchmark -p transport=REDIS -jvmArgs -Dredis.port=6380}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessengerBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({"LOOPBACK"})
+    public MessengerCluster.Transport transport;
+
+    @Param({"JSON", "BINARY"})
+    public MessengerCluster.Codec codec;
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    @Param({"1", "4"})
+    public int fanout;
+
+    private MessengerCluster cluster;
+    private BenchmarkPayload payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cluster = new MessengerCluster(transport, codec, fanout, System.getProperty("redis.host", "localhost"),
+                Integer.getInteger("redis.port", 6379));
+        cluster.awaitReady(TIMEOUT);
+        payload = new BenchmarkPayload(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void broadcast() {
+        // Sending batches and waiting for their delivery keeps the dispatch queues from overflowing
+        long expected = cluster.getReceivedCount() + (long) BATCH_SIZE * fanout;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            cluster.publish(payload);
+        }
+
+        if (!cluster.awaitReceived(expected, TIMEOUT)) {
+            throw new IllegalStateException("Messages lost: " + (expected - cluster.getReceivedCount()));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BenchmarkPayload roundTrip() {
+        return cluster.roundTrip(payload, TIMEOUT);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<BenchmarkPayload> gather() {
+        return cluster.gather(payload, TIMEOUT);
+    }
+}
@@ -0,0 +1,348 @@
+package com.smoothresources.smoothbase.benchmark;
+
+import com.smoothresources.smoothbase.common.connection.RedisConnection;
+import com.smoothresources.smoothbase.common.messenger.AbstractMessenger;
+import com.smoothresources.smoothbase.common.messenger.Message;
+import com.smoothresources.smoothbase.common.messenger.MessengerConfig;
+import com.smoothresources.smoothbase.common.messenger.codec.BinaryMessageCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.CompressingMessageCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.JsonEnvelopeCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageTypeRegistry;
+import com.smoothresources.smoothbase.common.messenger.interceptor.ConversationInterceptor;
+import com.smoothresources.smoothbase.common.messenger.interceptor.InterceptorManager;
+import com.smoothresources.smoothbase.common.messenger.loopback.LoopbackMessenger;
+import com.smoothresources.smoothbase.common.messenger.loopback.LoopbackNetwork;
+import com.smoothresources.smoothbase.common.messenger.redis.RedisMessenger;
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import com.smoothresources.smoothbase.common.task.LatencyHistogram;
+import com.smoothresources.smoothbase.common.task.TaskManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Set of messengers standing for the servers of a network, all in the benchmark JVM: one sender and a number of
+ * receivers (the fan-out), which record the end-to-end latency of the messages they receive and echo the requests.
+ * <p>
+ * The sender skips its own messages, so every message sent is received exactly once per receiver. With the Redis
+ * transport, every messenger has its own connection to the Redis server (a local one, e.g. started with
+ * {@code docker run -p 6379:6379 redis}), like separate servers would.
+ */
+public class MessengerCluster implements AutoCloseable {
+
+    /**
+     * Name of the channel used by the Redis messengers.
+     */
+    public static final String CHANNEL = "smoothbase-benchmark";
+
+    /**
+     * Id of the first receiver, answering the requests sent to a single server.
+     */
+    public static final String RESPONDER_ID = serverId(1);
+
+    private static final Logger LOGGER = Logger.getLogger("SmoothBase-Benchmark");
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    private final TaskManager taskManager = new BenchmarkTaskManager();
+    private final Serializer serializer;
+    private final int fanout;
+    private final List<AbstractMessenger> messengers = new ArrayList<>();
+    private final List<RedisConnection> connections = new ArrayList<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder receivedCount = new LongAdder();
+
+    /**
+     * Creates and connects a new MessengerCluster.
+     *
+     * @param transport The transport carrying the messages.
+     * @param codec     The codec encoding the messages.
+     * @param fanout    The number of receivers.
+     * @param redisHost The host of the Redis server, for the Redis transport.
+     * @param redisPort The port of the Redis server, for the Redis transport.
+     */
+    public MessengerCluster(@NotNull Transport transport, @NotNull Codec codec, int fanout,
+                            @NotNull String redisHost, int redisPort) {
+        if (fanout < 1) {
+            throw new IllegalArgumentException("Fan-out must be at least 1");
+        }
+
+        this.serializer = new Serializer.Builder()
+                .registerDefaultAdapters(List.of(BenchmarkPayload.class.getName()))
+                .build();
+        this.fanout = fanout;
+
+        LoopbackNetwork network = new LoopbackNetwork();
+        for (int i = 0; i <= fanout; i++) {
+            InterceptorManager interceptorManager = new InterceptorManager();
+            MessengerConfig config = new MessengerConfig.Builder()
+                    .setServerId(serverId(i))
+                    .setSelfDelivery(i == 0 ? MessengerConfig.SelfDelivery.SKIP : MessengerConfig.SelfDelivery.REMOTE)
+                    .setThreadNamePrefix("SmoothBase-Benchmark-" + i)
+                    .build();
+
+            AbstractMessenger messenger;
+            if (transport == Transport.LOOPBACK) {
+                messenger = new LoopbackMessenger(taskManager, LOGGER, serializer, interceptorManager, network,
+                        codec.create(serializer), config);
+            } else {
+                RedisConnection connection = new RedisConnection(redisHost, redisPort, LOGGER);
+                connection.connect();
+                connections.add(connection);
+                messenger = new RedisMessenger(taskManager, LOGGER, serializer, interceptorManager, connection,
+                        CHANNEL, codec.create(serializer), config);
+            }
+
+            if (i > 0) {
+                interceptorManager.registerInterceptor(BenchmarkPayload.class, new Receiver(messenger));
+            }
+
+            messengers.add(messenger);
+        }
+
+        messengers.forEach(AbstractMessenger::connect);
+    }
+
+    /**
+     * Waits until every receiver receives the messages of the sender (the Redis subscriptions are asynchronous),
+     * then clears the recorded latencies.
+     *
+     * @param timeout The maximum time to wait.
+     */
+    public void awaitReady(@NotNull Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        BenchmarkPayload probe = new BenchmarkPayload(0);
+        while (true) {
+            long expected = getReceivedCount() + fanout;
+            publish(probe);
+            if (awaitReceived(expected, Duration.ofMillis(100))) {
+                break;
+            }
+
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Receivers not ready after " + timeout.toMillis() + "ms");
+            }
+        }
+
+        latency.reset();
+    }
+
+    /**
+     * Broadcasts a payload from the sender, stamped with the current time.
+     *
+     * @param payload The payload to send.
+     */
+    public void publish(@NotNull BenchmarkPayload payload) {
+        payload.setSentAt(System.nanoTime());
+        getSender().send(new Message(BenchmarkPayload.class, serializer.serialize(payload)));
+    }
+
+    /**
+     * Sends a request from the sender to the first receiver and waits for its response.
+     *
+     * @param payload The payload of the request.
+     * @param timeout The maximum time to wait for the response.
+     * @return The response.
+     */
+    @NotNull
+    public BenchmarkPayload roundTrip(@NotNull BenchmarkPayload payload, @NotNull Duration timeout) {
+        return getSender().requestFromServer(RESPONDER_ID, payload, BenchmarkPayload.class, timeout).join();
+    }
+
+    /**
+     * Broadcasts a request from the sender and waits for the response of every receiver.
+     *
+     * @param payload The payload of the request.
+     * @param timeout The maximum time to wait for the responses.
+     * @return The responses.
+     */
+    @NotNull
+    public List<BenchmarkPayload> gather(@NotNull BenchmarkPayload payload, @NotNull Duration timeout) {
+        List<BenchmarkPayload> responses = getSender().gather(payload, BenchmarkPayload.class, timeout, fanout).join();
+        if (responses.size() < fanout) {
+            throw new IllegalStateException("Received " + responses.size() + " responses out of " + fanout);
+        }
+
+        return responses;
+    }
+
+    /**
+     * Waits until the receivers have received a number of messages in total.
+     *
+     * @param count   The number of received messages to wait for.
+     * @param timeout The maximum time to wait.
+     * @return True if the messages were received, false if the timeout elapsed first.
+     */
+    public boolean awaitReceived(long count, @NotNull Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (receivedCount.sum() < count) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the messenger sending the benchmarked messages.
+     *
+     * @return The sender.
+     */
+    @NotNull
+    public AbstractMessenger getSender() {
+        return messengers.get(0);
+    }
+
+    /**
+     * Gets every messenger of the cluster, the sender first.
+     *
+     * @return The messengers.
+     */
+    @NotNull
+    public List<AbstractMessenger> getMessengers() {
+        return messengers;
+    }
+
+    /**
+     * Gets the number of receivers.
+     *
+     * @return The fan-out.
+     */
+    public int getFanout() {
+        return fanout;
+    }
+
+    /**
+     * Gets the total number of messages received by the receivers.
+     *
+     * @return The number of received messages.
+     */
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    /**
+     * Gets the latencies between the sending and the handling of the received messages.
+     *
+     * @return The latency histogram.
+     */
+    @NotNull
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gets the number of messages dropped by the messengers because their dispatch queue was full.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDroppedCount() {
+        return messengers.stream().mapToLong(AbstractMessenger::getDroppedMessageCount).sum();
+    }
+
+    @Override
+    public void close() {
+        messengers.forEach(AbstractMessenger::disconnect);
+        connections.forEach(RedisConnection::disconnect);
+        taskManager.shutdown();
+    }
+
+    @NotNull
+    private static String serverId(int index) {
+        return "benchmark-" + index;
+    }
+
+    /**
+     * Transport carrying the messages between the messengers.
+     */
+    public enum Transport {
+        /**
+         * In-process {@link LoopbackNetwork}, measuring the messenger alone.
+         */
+        LOOPBACK,
+        /**
+         * Redis server, measuring the messenger and the network.
+         */
+        REDIS
+    }
+
+    /**
+     * Codec encoding the messages.
+     */
+    public enum Codec {
+        /**
+         * {@link JsonEnvelopeCodec}.
+         */
+        JSON,
+        /**
+         * {@link BinaryMessageCodec}, with the binary format of {@link BenchmarkPayload}.
+         */
+        BINARY,
+        /**
+         * {@link CompressingMessageCodec} compressing the messages of the binary codec from 1 KiB.
+         */
+        COMPRESSED;
+
+        /**
+         * Creates the codec.
+         *
+         * @param serializer The serializer of the messenger.
+         * @return The created codec.
+         */
+        @NotNull
+        public MessageCodec create(@NotNull Serializer serializer) {
+            if (this == JSON) {
+                return new JsonEnvelopeCodec(serializer);
+            }
+
+            MessageTypeRegistry registry = new MessageTypeRegistry()
+                    .register(1, BenchmarkPayload.class, new BenchmarkPayload.Codec());
+            MessageCodec codec = new BinaryMessageCodec(serializer, registry);
+            return this == BINARY ? codec : new CompressingMessageCodec(codec, 1024);
+        }
+    }
+
+    /**
+     * Task manager of a standalone JVM, without a main thread: synchronous tasks run on the calling thread.
+     */
+    private static class BenchmarkTaskManager extends TaskManager {
+
+        @Override
+        public void runTaskSync(@NotNull Runnable task) {
+            task.run();
+        }
+    }
+
+    /**
+     * Interceptor of a receiver, recording the latency of the messages and echoing the requests.
+     */
+    private class Receiver implements ConversationInterceptor {
+
+        private final AbstractMessenger messenger;
+
+        private Receiver(@NotNull AbstractMessenger messenger) {
+            this.messenger = messenger;
+        }
+
+        @Override
+        public void intercept(@NotNull Object object) {
+            latency.record(System.nanoTime() - ((BenchmarkPayload) object).getSentAt());
+            receivedCount.increment();
+        }
+
+        @Override
+        public void intercept(@NotNull Object object, @NotNull UUID conversationId) {
+            messenger.respond(conversationId, object);
+        }
+    }
+}
@@ -2,16 +2,27 @@ package com.smoothresources.smoothbase.bungeecord.task;
 
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.plugin.Plugin;
+import com.smoothresources.smoothbase.common.task.ScheduledTask;
+import com.smoothresources.smoothbase.common.task.TaskExecutorConfig;
 import com.smoothresources.smoothbase.common.task.TaskManager;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
 /**
  * Task manager for executing tasks in a BungeeCord server environment.
+ * <p>
+ * Delayed and repeating tasks are timed on the shared timer rather than with the BungeeCord scheduler, which keeps a
+ * plugin thread asleep for every scheduled task. They are tied to the plugin: call {@link #shutdown()} from
+ * {@link Plugin#onDisable()} to cancel them along with the tasks of the plugin on the BungeeCord scheduler.
  */
 public class BungeeTaskManager extends TaskManager {
 
     private final ProxyServer server;
     private final Plugin plugin;
+    private final Set<ScheduledTask> scheduledTasks = ConcurrentHashMap.newKeySet();
 
     /**
      * Creates a new BungeeTaskManager.
@@ -24,9 +35,48 @@ public class BungeeTaskManager extends TaskManager {
         this.plugin = plugin;
     }
 
+    /**
+     * Creates a new BungeeTaskManager.
+     *
+     * @param server The ProxyServer instance.
+     * @param plugin The plugin instance.
+     * @param config The worker pool configuration.
+     */
+    public BungeeTaskManager(@NotNull ProxyServer server, @NotNull Plugin plugin, @NotNull TaskExecutorConfig config) {
+        super(config);
+        this.server = server;
+        this.plugin = plugin;
+    }
+
     @Override
     public void runTaskSync(@NotNull Runnable task) {
         // BungeeCord does not support synchronous tasks (everything is async)
         server.getScheduler().runAsync(plugin, task);
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The pending delayed and repeating tasks and the tasks of the plugin on the BungeeCord scheduler are cancelled as
+     * well.
+     */
+    @Override
+    public void shutdown() {
+        for (ScheduledTask task : scheduledTasks) {
+            task.cancel();
+        }
+
+        server.getScheduler().cancel(plugin);
+        super.shutdown();
+    }
+
+    @NotNull
+    @Override
+    protected ScheduledTask schedule(@NotNull Runnable task, long initialDelay, long period, int times,
+                                     @NotNull BiConsumer<ScheduledTask, Runnable> dispatcher) {
+        ScheduledTask scheduledTask = super.schedule(task, initialDelay, period, times, dispatcher);
+        scheduledTasks.add(scheduledTask);
+        scheduledTask.onComplete(scheduledTasks::remove);
+        return scheduledTask;
+    }
 }
@@ -0,0 +1,655 @@
+package com.smoothresources.smoothbase.common.messenger;
+
+import com.smoothresources.smoothbase.common.messenger.codec.Envelope;
+import com.smoothresources.smoothbase.common.messenger.codec.JsonEnvelopeCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageCodec;
+import com.smoothresources.smoothbase.common.messenger.interceptor.InterceptorManager;
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import com.smoothresources.smoothbase.common.task.ScheduledTask;
+import com.smoothresources.smoothbase.common.task.StripedExecutor;
+import com.smoothresources.smoothbase.common.task.TaskManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Abstract class for the messengers exchanging encoded messages through a transport.
+ * <p>
+ * Implementations only move bytes: they publish the messages encoded by this class (to every server, to a server or
+ * to a topic) and submit the messages they receive, which this class decodes and handles.
+ * <p>
+ * Pending conversations are kept in a concurrent table and removed atomically by whichever of the response (the last
+ * expected one, for gathering conversations) or the timeout comes first, so a conversation is never completed twice.
+ * Timeouts are timed by the timer of the task manager and cancelled when the response arrives. Messages are encoded
+ * with a {@link MessageCodec}: JSON envelopes by default (see {@link JsonEnvelopeCodec}), or a compact binary form for
+ * the types registered in a {@link com.smoothresources.smoothbase.common.messenger.codec.BinaryMessageCodec}.
+ * Received messages are decoded and handled by a pool of dispatch threads, striped by message type so that the
+ * messages of a type are handled in order, and never on the thread reading the transport.
+ * <p>
+ * Messages carry the identifier of the server sending them, if it has one. It allows the responses to go straight to
+ * the server which sent the request, and a server to recognize its own messages without decoding them, so that they
+ * can be skipped or handled in process (see {@link MessengerConfig.SelfDelivery}).
+ */
+public abstract class AbstractMessenger implements Messenger {
+
+    // How long the server which sent a request is remembered, for its responses
+    private static final long REQUEST_ORIGIN_TTL_MILLIS = 60000;
+
+    private final TaskManager taskManager;
+    private final Logger logger;
+    private final Serializer serializer;
+    private final InterceptorManager interceptorManager;
+    private final MessageCodec codec;
+    private final MessengerConfig config;
+    private final String serverId;
+    private final MessengerConfig.SelfDelivery selfDelivery;
+    private final ConcurrentHashMap<UUID, PendingConversation> pendingConversations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, RequestOrigin> requestOrigins = new ConcurrentHashMap<>();
+    private final LongAdder invalidMessages = new LongAdder();
+    private volatile StripedExecutor dispatcher;
+
+    /**
+     * Creates a new AbstractMessenger.
+     *
+     * @param taskManager        The task manager for running asynchronous tasks.
+     * @param logger             The logger for logging messages.
+     * @param serializer         The serializer for serializing messages.
+     * @param interceptorManager The manager for handling interceptors.
+     * @param codec              The codec for encoding messages (the same on every server).
+     * @param config             The configuration of the processing of the messages.
+     */
+    protected AbstractMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger,
+                                @NotNull Serializer serializer, @NotNull InterceptorManager interceptorManager,
+                                @NotNull MessageCodec codec, @NotNull MessengerConfig config) {
+        this.taskManager = taskManager;
+        this.logger = logger;
+        this.serializer = serializer;
+        this.interceptorManager = interceptorManager;
+        this.codec = codec;
+        this.config = config;
+        this.serverId = config.getServerId();
+        this.selfDelivery = config.getSelfDelivery();
+    }
+
+    /**
+     * Publishes an encoded message to every server.
+     *
+     * @param data The encoded message.
+     */
+    protected abstract void publish(@NotNull byte[] data);
+
+    /**
+     * Publishes an encoded message to a single server.
+     *
+     * @param serverId The identifier of the server.
+     * @param data     The encoded message.
+     */
+    protected abstract void publishToServer(@NotNull String serverId, @NotNull byte[] data);
+
+    /**
+     * Publishes an encoded message to the servers subscribed to a topic.
+     *
+     * @param topic The topic.
+     * @param data  The encoded message.
+     */
+    protected abstract void publishToTopic(@NotNull String topic, @NotNull byte[] data);
+
+    /**
+     * Checks whether this server receives the messages sent to a topic.
+     *
+     * @param topic The topic.
+     * @return True if the topic (or a pattern matching it) is subscribed.
+     */
+    protected abstract boolean isSubscribed(@NotNull String topic);
+
+    @Override
+    public void send(@NotNull Message message) {
+        broadcast(codec.encode(Envelope.Kind.MESSAGE, message.getClazz(), null, serverId, message.getJson()),
+                () -> decodeJson(Envelope.Kind.MESSAGE, message.getClazz(), null, message.getJson()));
+    }
+
+    @Override
+    public void send(@NotNull Conversation conversation) {
+        UUID conversationUUID = conversation.getConversationUUID();
+        if (conversation.getType() == Conversation.Type.REQUEST) {
+            ConversationCallback callback = conversation.getCallback();
+            if (callback == null) {
+                throw new IllegalArgumentException("A conversation request must have a callback");
+            }
+
+            sendRequest(this::broadcast, conversationUUID, callback, codec.encode(Envelope.Kind.REQUEST,
+                    conversation.getClazz(), conversationUUID, serverId, conversation.getJson()),
+                    () -> decodeJson(Envelope.Kind.REQUEST, conversation.getClazz(), conversationUUID,
+                            conversation.getJson()));
+        } else {
+            // This is the response of a previous request
+            reply(conversationUUID, codec.encode(Envelope.Kind.RESPONSE, conversation.getClazz(), conversationUUID,
+                    serverId, conversation.getJson()), () -> decodeJson(Envelope.Kind.RESPONSE,
+                    conversation.getClazz(), conversationUUID, conversation.getJson()));
+        }
+    }
+
+    @Override
+    public void sendToServer(@NotNull String serverId, @NotNull Object payload) {
+        Envelope envelope = new Envelope(Envelope.Kind.MESSAGE, payload.getClass(), null, this.serverId, payload);
+        routeToServer(serverId, codec.encode(envelope), () -> envelope);
+    }
+
+    @Override
+    public void sendToTopic(@NotNull String topic, @NotNull Object payload) {
+        Envelope envelope = new Envelope(Envelope.Kind.MESSAGE, payload.getClass(), null, serverId, payload);
+        byte[] data = codec.encode(envelope);
+        if (selfDelivery == MessengerConfig.SelfDelivery.LOCAL && isSubscribed(topic)) {
+            deliverLocally(data, () -> envelope);
+        }
+
+        publishToTopic(topic, data);
+    }
+
+    @NotNull
+    @Override
+    public <R> CompletableFuture<R> request(@NotNull Object payload, @NotNull Class<R> responseType,
+                                            @NotNull Duration timeout) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        return converse(this::broadcast, payload, new FutureConversationCallback<>(future, responseType,
+                timeout.toMillis()), future);
+    }
+
+    @NotNull
+    @Override
+    public <R> CompletableFuture<R> requestFromServer(@NotNull String serverId, @NotNull Object payload,
+                                                      @NotNull Class<R> responseType, @NotNull Duration timeout) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        return converse((data, envelope) -> routeToServer(serverId, data, envelope), payload,
+                new FutureConversationCallback<>(future, responseType, timeout.toMillis()), future);
+    }
+
+    @NotNull
+    @Override
+    public <R> CompletableFuture<List<R>> gather(@NotNull Object payload, @NotNull Class<R> responseType,
+                                                 @NotNull Duration timeout, int maxResponses) {
+        CompletableFuture<List<R>> future = new CompletableFuture<>();
+        return converse(this::broadcast, payload, new GatherConversationCallback<>(future, responseType,
+                timeout.toMillis(), maxResponses), future);
+    }
+
+    @Override
+    public void respond(@NotNull UUID conversationUUID, @NotNull Object payload) {
+        Envelope envelope = new Envelope(Envelope.Kind.RESPONSE, payload.getClass(), conversationUUID, serverId,
+                payload);
+        reply(conversationUUID, codec.encode(envelope), () -> envelope);
+    }
+
+    @Override
+    public void onMessage(@NotNull Message message) {
+        Object object = serializer.deserialize(message.getJson(), message.getClazz());
+        if (object == null) {
+            logger.warning("Received invalid message: " + message.getJson());
+            return;
+        }
+
+        handleMessage(object);
+    }
+
+    @Override
+    public void onMessage(@NotNull Conversation conversation) {
+        Object object = serializer.deserialize(conversation.getJson(), conversation.getClazz());
+        if (object == null) {
+            logger.warning("Received invalid message (Conversation): " + conversation.getJson());
+            return;
+        }
+
+        if (conversation.getType() == Conversation.Type.REQUEST) {
+            handleRequest(object, conversation.getConversationUUID(), null);
+        } else {
+            handleResponse(object, conversation.getConversationUUID());
+        }
+    }
+
+    /**
+     * Gets the number of received messages dropped because their dispatch thread was overloaded.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessageCount() {
+        StripedExecutor dispatcher = this.dispatcher;
+        return dispatcher == null ? 0 : dispatcher.getRejectedCount();
+    }
+
+    /**
+     * Gets the number of received messages dropped because they could not be decoded.
+     *
+     * @return The number of invalid messages.
+     */
+    public long getInvalidMessageCount() {
+        return invalidMessages.sum();
+    }
+
+    /**
+     * Gets the number of received messages waiting for a dispatch thread.
+     *
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessageCount() {
+        StripedExecutor dispatcher = this.dispatcher;
+        return dispatcher == null ? 0 : dispatcher.getQueuedCount();
+    }
+
+    /**
+     * Gets the number of conversations waiting for a response.
+     *
+     * @return The number of pending conversations.
+     */
+    public int getPendingConversationCount() {
+        return pendingConversations.size();
+    }
+
+    /**
+     * Starts the dispatch threads, if the configuration has any. Called when the messenger connects.
+     */
+    protected void startDispatching() {
+        if (config.getDispatchThreads() > 0) {
+            dispatcher = new StripedExecutor(config.getThreadNamePrefix() + "-Dispatch", config.getDispatchThreads(),
+                    config.getDispatchQueueCapacity());
+        }
+    }
+
+    /**
+     * Stops the dispatch threads. The messages waiting for them are dropped. Called when the messenger disconnects.
+     */
+    protected void stopDispatching() {
+        StripedExecutor dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * Submits a received message to its dispatch thread, or handles it right away if there are no dispatch threads.
+     * The message is dropped (and counted) if its dispatch thread is overloaded, so that the thread reading the
+     * transport is never blocked.
+     *
+     * @param data The encoded message.
+     */
+    protected void submit(@NotNull byte[] data) {
+        if (isOwnMessage(data)) {
+            return;
+        }
+
+        submitTask(routingKeyOf(data), () -> receive(data));
+    }
+
+    /**
+     * Submits a received message to its dispatch thread, waiting for room in its queue instead of dropping it, or
+     * handles it right away if there are no dispatch threads. For transports which keep the messages until they are
+     * acknowledged, and can therefore slow down reading.
+     *
+     * @param data      The encoded message.
+     * @param onHandled The callback run once the message has been handled (even if handling it failed), but not if
+     *                  the dispatch threads were stopped before handling it.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    protected void submitAndWait(@NotNull byte[] data, @NotNull Runnable onHandled) throws InterruptedException {
+        if (isOwnMessage(data)) {
+            onHandled.run();
+            return;
+        }
+
+        Runnable task = () -> {
+            try {
+                receive(data);
+            } finally {
+                onHandled.run();
+            }
+        };
+
+        StripedExecutor dispatcher = this.dispatcher;
+        if (dispatcher == null) {
+            task.run();
+        } else {
+            // Not handled if the dispatch threads were stopped meanwhile: the message is kept by the transport
+            dispatcher.executeBlocking(routingKeyOf(data), task);
+        }
+    }
+
+    /**
+     * Decodes and handles a received message. Invalid messages and handling failures are logged.
+     *
+     * @param data The encoded message.
+     */
+    protected void receive(@NotNull byte[] data) {
+        Envelope envelope;
+        try {
+            envelope = codec.decode(data);
+        } catch (RuntimeException e) {
+            invalidMessages.increment();
+            logger.warning("Received invalid message (" + data.length + " bytes): " + e);
+            return;
+        }
+
+        try {
+            dispatch(envelope);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to handle message of type " + envelope.getType().getName(), e);
+        }
+    }
+
+    /**
+     * Gets the task manager for running asynchronous tasks.
+     *
+     * @return The task manager.
+     */
+    @NotNull
+    protected TaskManager getTaskManager() {
+        return taskManager;
+    }
+
+    /**
+     * Gets the logger for logging messages.
+     *
+     * @return The logger.
+     */
+    @NotNull
+    protected Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Gets the codec for encoding messages.
+     *
+     * @return The message codec.
+     */
+    @NotNull
+    protected MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Gets the configuration of the processing of the messages.
+     *
+     * @return The messenger configuration.
+     */
+    @NotNull
+    protected MessengerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Compiles a glob-style topic pattern, like the Redis channel patterns (only * and ? are supported).
+     *
+     * @param pattern The topic pattern.
+     * @return The compiled pattern.
+     */
+    @NotNull
+    protected static Pattern compileTopicPattern(@NotNull String pattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c != '*' && c != '?') {
+                literal.append(c);
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+
+            regex.append(c == '*' ? ".*" : ".");
+        }
+
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private void broadcast(@NotNull byte[] data, @NotNull Supplier<Envelope> envelope) {
+        if (selfDelivery == MessengerConfig.SelfDelivery.LOCAL) {
+            deliverLocally(data, envelope);
+        }
+
+        publish(data);
+    }
+
+    private void routeToServer(@NotNull String target, @NotNull byte[] data, @NotNull Supplier<Envelope> envelope) {
+        if (!target.equals(serverId) || selfDelivery == MessengerConfig.SelfDelivery.REMOTE) {
+            publishToServer(target, data);
+        } else if (selfDelivery == MessengerConfig.SelfDelivery.LOCAL) {
+            // Never goes through the messaging service
+            deliverLocally(data, envelope);
+        }
+    }
+
+    private void reply(@NotNull UUID conversationUUID, @NotNull byte[] data, @NotNull Supplier<Envelope> envelope) {
+        // Sent to the server which sent the request if it is known, to every server otherwise
+        RequestOrigin requester = requestOrigins.remove(conversationUUID);
+        if (requester == null) {
+            broadcast(data, envelope);
+        } else {
+            requester.cancelExpiry();
+            routeToServer(requester.serverId, data, envelope);
+        }
+    }
+
+    private void deliverLocally(@NotNull byte[] data, @NotNull Supplier<Envelope> envelope) {
+        submitTask(routingKeyOf(data), () -> {
+            try {
+                dispatch(envelope.get());
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to handle local message", e);
+            }
+        });
+    }
+
+    private void submitTask(int routingKey, @NotNull Runnable task) {
+        StripedExecutor dispatcher = this.dispatcher;
+        if (dispatcher == null) {
+            task.run();
+            return;
+        }
+
+        if (!dispatcher.execute(routingKey, task)) {
+            long dropped = dispatcher.getRejectedCount();
+            // Logged on the first drop and then every 1000 drops, as this happens under heavy load
+            if (dropped % 1000 == 1) {
+                logger.warning("Dropped a message as the dispatch queue is full (" + dropped + " dropped so far)");
+            }
+        }
+    }
+
+    private int routingKeyOf(@NotNull byte[] data) {
+        try {
+            return codec.routingKey(data);
+        } catch (RuntimeException e) {
+            // Malformed message, reported (and counted) when decoding it: it must not reach the thread reading the
+            // transport, which would take it for a lost connection
+            return 0;
+        }
+    }
+
+    private boolean isOwnMessage(@NotNull byte[] data) {
+        if (selfDelivery == MessengerConfig.SelfDelivery.REMOTE) {
+            return false;
+        }
+
+        try {
+            return serverId.equals(codec.originOf(data));
+        } catch (RuntimeException e) {
+            // Malformed message, reported when decoding it
+            return false;
+        }
+    }
+
+    @NotNull
+    private Envelope decodeJson(@NotNull Envelope.Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                                @NotNull String json) {
+        Object payload = serializer.deserialize(json, type);
+        if (payload == null) {
+            throw new IllegalArgumentException("Invalid message: " + json);
+        }
+
+        return new Envelope(kind, type, conversationUUID, serverId, payload);
+    }
+
+    @NotNull
+    private <T> CompletableFuture<T> converse(@NotNull BiConsumer<byte[], Supplier<Envelope>> publisher,
+                                              @NotNull Object payload, @NotNull ConversationCallback callback,
+                                              @NotNull CompletableFuture<T> future) {
+        UUID conversationUUID = UUID.randomUUID();
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled()) {
+                PendingConversation pending = pendingConversations.remove(conversationUUID);
+                if (pending != null) {
+                    pending.cancelTimeout();
+                }
+            }
+        });
+
+        try {
+            Envelope envelope = new Envelope(Envelope.Kind.REQUEST, payload.getClass(), conversationUUID, serverId,
+                    payload);
+            sendRequest(publisher, conversationUUID, callback, codec.encode(envelope), () -> envelope);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private void sendRequest(@NotNull BiConsumer<byte[], Supplier<Envelope>> publisher,
+                             @NotNull UUID conversationUUID, @NotNull ConversationCallback callback,
+                             @NotNull byte[] data, @NotNull Supplier<Envelope> envelope) {
+        // Registered before publishing, so that a fast response cannot miss it
+        PendingConversation pending = new PendingConversation(callback);
+        pendingConversations.put(conversationUUID, pending);
+        pending.timeout = taskManager.runTaskLaterAsync(() -> {
+            PendingConversation expired = pendingConversations.remove(conversationUUID);
+            if (expired != null) {
+                expired.callback.onTimeout();
+            }
+        }, callback.getTimeout());
+
+        try {
+            publisher.accept(data, envelope);
+        } catch (RuntimeException e) {
+            if (pendingConversations.remove(conversationUUID, pending)) {
+                pending.cancelTimeout();
+            }
+
+            throw e;
+        }
+    }
+
+    private void dispatch(@NotNull Envelope envelope) {
+        switch (envelope.getKind()) {
+            case MESSAGE -> handleMessage(envelope.getPayload());
+            case REQUEST -> handleRequest(envelope.getPayload(), envelope.getConversationUUID(),
+                    envelope.getOrigin());
+            case RESPONSE -> handleResponse(envelope.getPayload(), envelope.getConversationUUID());
+        }
+    }
+
+    private void handleMessage(@NotNull Object object) {
+        if (!interceptorManager.intercept(object)) {
+            logger.warning("No interceptor found for message of type " + object.getClass().getName());
+        }
+    }
+
+    private void handleRequest(@NotNull Object object, @NotNull UUID conversationUUID, @Nullable String origin) {
+        if (origin != null) {
+            // Remembered until the response is sent, or forgotten after a while if it never is
+            RequestOrigin requestOrigin = new RequestOrigin(origin);
+            requestOrigins.put(conversationUUID, requestOrigin);
+            requestOrigin.expiry = taskManager.runTaskLaterAsync(
+                    () -> requestOrigins.remove(conversationUUID, requestOrigin), REQUEST_ORIGIN_TTL_MILLIS);
+        }
+
+        if (!interceptorManager.intercept(object, conversationUUID)) {
+            logger.warning("No conversation interceptor found for request of type " + object.getClass().getName());
+        }
+    }
+
+    private void handleResponse(@NotNull Object object, @NotNull UUID conversationUUID) {
+        // This is the response of a previous request
+        PendingConversation pending = pendingConversations.get(conversationUUID);
+        if (pending == null) return;
+
+        // Ignored responses neither count nor close the conversation
+        if (!pending.callback.accepts(object)) return;
+
+        int maxResponses = pending.callback.getMaxResponses();
+        if (maxResponses == 1) {
+            if (!pendingConversations.remove(conversationUUID, pending)) return;
+
+            pending.cancelTimeout();
+            pending.callback.onSuccess(object);
+            return;
+        }
+
+        // Gathering conversation: stays open until the last expected response
+        int received = pending.responses.incrementAndGet();
+        if (maxResponses > 0 && received > maxResponses) return;
+
+        pending.callback.onSuccess(object);
+        if (received == maxResponses && pendingConversations.remove(conversationUUID, pending)) {
+            pending.cancelTimeout();
+        }
+    }
+
+    /**
+     * Conversation waiting for its response or its timeout.
+     */
+    private static class PendingConversation {
+
+        private final ConversationCallback callback;
+        private final AtomicInteger responses = new AtomicInteger(0);
+        private volatile ScheduledTask timeout;
+
+        private PendingConversation(@NotNull ConversationCallback callback) {
+            this.callback = callback;
+        }
+
+        private void cancelTimeout() {
+            // Null if the response arrived before the timeout was scheduled, in which case the timeout is a no-op
+            ScheduledTask timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Server which sent a request, remembered until the response is sent or until it expires.
+     */
+    private static class RequestOrigin {
+
+        private final String serverId;
+        private volatile ScheduledTask expiry;
+
+        private RequestOrigin(@NotNull String serverId) {
+            this.serverId = serverId;
+        }
+
+        private void cancelExpiry() {
+            // Null if the response was sent before the expiry was scheduled, in which case the expiry is a no-op
+            ScheduledTask expiry = this.expiry;
+            if (expiry != null) {
+                expiry.cancel();
+            }
+        }
+    }
+}
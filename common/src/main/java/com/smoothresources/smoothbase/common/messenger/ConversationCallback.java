@@ -25,4 +25,26 @@ public interface ConversationCallback {
      * @return The timeout duration in milliseconds.
      */
     long getTimeout();
+
+    /**
+     * Gets the number of responses the conversation waits for. Conversations gathering the responses of several
+     * servers are kept open, receiving every response through {@link #onSuccess(Object)}, until this number is reached
+     * or until the timeout, in which case {@link #onTimeout()} is called.
+     *
+     * @return The number of responses, or 0 to receive responses until the timeout.
+     */
+    default int getMaxResponses() {
+        return 1;
+    }
+
+    /**
+     * Checks whether a response counts toward the number of responses a gathering conversation waits for (see
+     * {@link #getMaxResponses()}). Rejected responses are not passed to {@link #onSuccess(Object)}.
+     *
+     * @param object The received response.
+     * @return True if the response is accepted, false if it is ignored.
+     */
+    default boolean accepts(@NotNull Object object) {
+        return true;
+    }
 }
@@ -0,0 +1,61 @@
+package com.smoothresources.smoothbase.common.messenger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Conversation callback completing a future with the response of a request.
+ *
+ * @param <R> The type of the expected response.
+ */
+public class FutureConversationCallback<R> implements ConversationCallback {
+
+    private final CompletableFuture<R> future;
+    private final Class<R> responseType;
+    private final long timeout;
+
+    /**
+     * Creates a new FutureConversationCallback.
+     *
+     * @param future       The future to complete.
+     * @param responseType The class of the expected response.
+     * @param timeout      The timeout duration in milliseconds.
+     */
+    public FutureConversationCallback(@NotNull CompletableFuture<R> future, @NotNull Class<R> responseType, long timeout) {
+        this.future = future;
+        this.responseType = responseType;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void onSuccess(@NotNull Object object) {
+        if (responseType.isInstance(object)) {
+            future.complete(responseType.cast(object));
+        } else {
+            future.completeExceptionally(new ClassCastException("Expected a response of type "
+                    + responseType.getName() + " but received " + object.getClass().getName()));
+        }
+    }
+
+    @Override
+    public void onTimeout() {
+        future.completeExceptionally(new TimeoutException("No response received within " + timeout + "ms"));
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Gets the future completed by this callback.
+     *
+     * @return The future.
+     */
+    @NotNull
+    public CompletableFuture<R> getFuture() {
+        return future;
+    }
+}
@@ -0,0 +1,100 @@
+package com.smoothresources.smoothbase.common.messenger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Conversation callback gathering the responses of a request broadcast to every server, completing a future with
+ * the responses received before the timeout, or as soon as the maximum number of responses is reached.
+ *
+ * @param <R> The type of the expected responses.
+ */
+public class GatherConversationCallback<R> implements ConversationCallback {
+
+    private final CompletableFuture<List<R>> future;
+    private final Class<R> responseType;
+    private final long timeout;
+    private final int maxResponses;
+    private final List<R> responses = new ArrayList<>();
+
+    /**
+     * Creates a new GatherConversationCallback.
+     *
+     * @param future       The future to complete with the responses.
+     * @param responseType The class of the expected responses (responses of another type are ignored).
+     * @param timeout      The time in milliseconds to wait for responses.
+     * @param maxResponses The number of responses after which the future is completed, or 0 to wait for the timeout.
+     */
+    public GatherConversationCallback(@NotNull CompletableFuture<List<R>> future, @NotNull Class<R> responseType,
+                                      long timeout, int maxResponses) {
+        if (maxResponses < 0) {
+            throw new IllegalArgumentException("Max responses must not be negative");
+        }
+
+        this.future = future;
+        this.responseType = responseType;
+        this.timeout = timeout;
+        this.maxResponses = maxResponses;
+    }
+
+    @Override
+    public boolean accepts(@NotNull Object object) {
+        return responseType.isInstance(object);
+    }
+
+    @Override
+    public void onSuccess(@NotNull Object object) {
+        if (!responseType.isInstance(object)) {
+            return;
+        }
+
+        List<R> result = null;
+        synchronized (responses) {
+            if (future.isDone()) {
+                return;
+            }
+
+            responses.add(responseType.cast(object));
+            if (maxResponses > 0 && responses.size() >= maxResponses) {
+                result = new ArrayList<>(responses);
+            }
+        }
+
+        if (result != null) {
+            future.complete(result);
+        }
+    }
+
+    @Override
+    public void onTimeout() {
+        List<R> result;
+        synchronized (responses) {
+            result = new ArrayList<>(responses);
+        }
+
+        future.complete(result);
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public int getMaxResponses() {
+        return maxResponses;
+    }
+
+    /**
+     * Gets the future completed by this callback.
+     *
+     * @return The future.
+     */
+    @NotNull
+    public CompletableFuture<List<R>> getFuture() {
+        return future;
+    }
+}
@@ -2,6 +2,11 @@ package com.smoothresources.smoothbase.common.messenger;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for handling messaging operations.
  */
@@ -31,6 +36,109 @@ public interface Messenger {
      */
     void send(@NotNull Conversation conversation);
 
+    /**
+     * Sends a message to a single server.
+     *
+     * @param serverId The identifier of the server.
+     * @param payload  The message object, handled on the server by an interceptor.
+     */
+    void sendToServer(@NotNull String serverId, @NotNull Object payload);
+
+    /**
+     * Sends a message to the servers subscribed to a topic.
+     *
+     * @param topic   The topic (e.g. the name of the message type).
+     * @param payload The message object, handled on the subscribed servers by an interceptor.
+     */
+    void sendToTopic(@NotNull String topic, @NotNull Object payload);
+
+    /**
+     * Subscribes to a topic, to receive the messages sent to it.
+     *
+     * @param topic The topic.
+     */
+    void subscribeTopic(@NotNull String topic);
+
+    /**
+     * Unsubscribes from a topic.
+     *
+     * @param topic The topic.
+     */
+    void unsubscribeTopic(@NotNull String topic);
+
+    /**
+     * Sends a request and returns its response as a future.
+     * <p>
+     * The future is completed from the messenger thread: continuations doing more than a quick computation should be
+     * moved to another thread (e.g. with {@link com.smoothresources.smoothbase.common.task.TaskManager#thenSync}).
+     * Cancelling the future forgets the request.
+     *
+     * @param payload      The request object, handled on the other side by a conversation interceptor.
+     * @param responseType The class of the expected response.
+     * @param timeout      The time to wait for the response.
+     * @param <R>          The type of the expected response.
+     * @return A future completed with the response, or exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if no response arrived in time, or with a
+     * {@link ClassCastException} if the response is not of the expected type.
+     */
+    @NotNull
+    <R> CompletableFuture<R> request(@NotNull Object payload, @NotNull Class<R> responseType, @NotNull Duration timeout);
+
+    /**
+     * Sends a request to a single server and returns its response as a future, like
+     * {@link #request(Object, Class, Duration)}.
+     *
+     * @param serverId     The identifier of the server.
+     * @param payload      The request object, handled on the server by a conversation interceptor.
+     * @param responseType The class of the expected response.
+     * @param timeout      The time to wait for the response.
+     * @param <R>          The type of the expected response.
+     * @return A future completed with the response.
+     */
+    @NotNull
+    <R> CompletableFuture<R> requestFromServer(@NotNull String serverId, @NotNull Object payload,
+                                               @NotNull Class<R> responseType, @NotNull Duration timeout);
+
+    /**
+     * Broadcasts a request to every server and gathers the responses received before the timeout.
+     *
+     * @param payload      The request object, handled on each server by a conversation interceptor.
+     * @param responseType The class of the expected responses.
+     * @param timeout      The time to wait for responses.
+     * @param <R>          The type of the expected responses.
+     * @return A future completed with the responses received before the timeout.
+     */
+    @NotNull
+    default <R> CompletableFuture<List<R>> gather(@NotNull Object payload, @NotNull Class<R> responseType,
+                                                  @NotNull Duration timeout) {
+        return gather(payload, responseType, timeout, 0);
+    }
+
+    /**
+     * Broadcasts a request to every server and gathers the responses, until the timeout or until enough responses
+     * have been received. Like for {@link #request(Object, Class, Duration)}, the future is completed from the
+     * messenger thread.
+     *
+     * @param payload      The request object, handled on each server by a conversation interceptor.
+     * @param responseType The class of the expected responses (responses of another type are ignored).
+     * @param timeout      The maximum time to wait for responses.
+     * @param maxResponses The number of responses after which the future is completed early (e.g. 1 for "where is
+     *                     player X"), or 0 to wait for the timeout.
+     * @param <R>          The type of the expected responses.
+     * @return A future completed with the responses received (possibly none).
+     */
+    @NotNull
+    <R> CompletableFuture<List<R>> gather(@NotNull Object payload, @NotNull Class<R> responseType,
+                                          @NotNull Duration timeout, int maxResponses);
+
+    /**
+     * Sends the response to a request received by a conversation interceptor.
+     *
+     * @param conversationUUID The unique identifier of the conversation, as received by the interceptor.
+     * @param payload          The response object.
+     */
+    void respond(@NotNull UUID conversationUUID, @NotNull Object payload);
+
     /**
      * Handles an incoming message.
      *
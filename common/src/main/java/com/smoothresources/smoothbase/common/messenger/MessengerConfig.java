@@ -0,0 +1,385 @@
+package com.smoothresources.smoothbase.common.messenger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Configuration class for the processing of the messages received and sent by a {@link Messenger}.
+ */
+public class MessengerConfig {
+
+    private final String serverId;
+    private final SelfDelivery selfDelivery;
+    private final int dispatchThreads;
+    private final int dispatchQueueCapacity;
+    private final int publishBatchSize;
+    private final long publishLingerMillis;
+    private final int publishQueueCapacity;
+    private final long reconnectMinDelayMillis;
+    private final long reconnectMaxDelayMillis;
+    private final int outboundBufferCapacity;
+    private final String threadNamePrefix;
+
+    /**
+     * Creates a new MessengerConfig.
+     *
+     * @param serverId                The identifier of this server, which other servers use to send messages to it,
+     *                                or null if it cannot be addressed directly.
+     * @param selfDelivery            How the messages sent by this server to itself are delivered.
+     * @param dispatchThreads         The number of threads handling the received messages, or 0 to handle them on
+     *                                the thread receiving them.
+     * @param dispatchQueueCapacity   The maximum number of received messages waiting for each dispatch thread.
+     * @param publishBatchSize        The maximum number of messages sent in a batch, or 1 to send each message from
+     *                                the thread sending it.
+     * @param publishLingerMillis     The maximum time in milliseconds a sent message waits for its batch to fill.
+     * @param publishQueueCapacity    The maximum number of sent messages waiting for their batch.
+     * @param reconnectMinDelayMillis The delay in milliseconds before the first reconnection attempt.
+     * @param reconnectMaxDelayMillis The maximum delay in milliseconds between reconnection attempts.
+     * @param outboundBufferCapacity  The maximum number of sent messages kept while disconnected, or 0 to throw.
+     * @param threadNamePrefix        The prefix for the messenger thread names.
+     */
+    public MessengerConfig(@Nullable String serverId, @NotNull SelfDelivery selfDelivery, int dispatchThreads,
+                           int dispatchQueueCapacity, int publishBatchSize, long publishLingerMillis,
+                           int publishQueueCapacity, long reconnectMinDelayMillis, long reconnectMaxDelayMillis,
+                           int outboundBufferCapacity, @NotNull String threadNamePrefix) {
+        if (selfDelivery != SelfDelivery.REMOTE && serverId == null) {
+            throw new IllegalArgumentException("A server identifier is required to recognize the own messages");
+        }
+
+        if (dispatchThreads < 0) {
+            throw new IllegalArgumentException("Dispatch threads must not be negative");
+        }
+
+        if (dispatchQueueCapacity <= 0) {
+            throw new IllegalArgumentException("Dispatch queue capacity must be positive");
+        }
+
+        if (publishBatchSize <= 0 || publishQueueCapacity <= 0 || publishLingerMillis < 0) {
+            throw new IllegalArgumentException("Invalid publish batching (batch size: " + publishBatchSize
+                    + ", linger: " + publishLingerMillis + "ms, queue capacity: " + publishQueueCapacity + ")");
+        }
+
+        if (reconnectMinDelayMillis <= 0 || reconnectMaxDelayMillis < reconnectMinDelayMillis) {
+            throw new IllegalArgumentException("Invalid reconnection delays (min: " + reconnectMinDelayMillis
+                    + "ms, max: " + reconnectMaxDelayMillis + "ms)");
+        }
+
+        if (outboundBufferCapacity < 0) {
+            throw new IllegalArgumentException("Outbound buffer capacity must not be negative");
+        }
+
+        this.serverId = serverId;
+        this.selfDelivery = selfDelivery;
+        this.dispatchThreads = dispatchThreads;
+        this.dispatchQueueCapacity = dispatchQueueCapacity;
+        this.publishBatchSize = publishBatchSize;
+        this.publishLingerMillis = publishLingerMillis;
+        this.publishQueueCapacity = publishQueueCapacity;
+        this.reconnectMinDelayMillis = reconnectMinDelayMillis;
+        this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+        this.outboundBufferCapacity = outboundBufferCapacity;
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    /**
+     * Gets the identifier of this server.
+     *
+     * @return The server identifier, or null if the server cannot be addressed directly.
+     */
+    @Nullable
+    public String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Gets how the messages sent by this server to itself are delivered.
+     *
+     * @return The self delivery mode.
+     */
+    @NotNull
+    public SelfDelivery getSelfDelivery() {
+        return selfDelivery;
+    }
+
+    /**
+     * Gets the number of threads handling the received messages.
+     *
+     * @return The number of dispatch threads, or 0 if messages are handled on the thread receiving them.
+     */
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    /**
+     * Gets the maximum number of received messages waiting for each dispatch thread.
+     *
+     * @return The dispatch queue capacity.
+     */
+    public int getDispatchQueueCapacity() {
+        return dispatchQueueCapacity;
+    }
+
+    /**
+     * Gets the maximum number of messages sent in a batch.
+     *
+     * @return The publish batch size, 1 if sent messages are not batched.
+     */
+    public int getPublishBatchSize() {
+        return publishBatchSize;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds a sent message waits for its batch to fill.
+     *
+     * @return The publish linger time in milliseconds.
+     */
+    public long getPublishLingerMillis() {
+        return publishLingerMillis;
+    }
+
+    /**
+     * Gets the maximum number of sent messages waiting for their batch.
+     *
+     * @return The publish queue capacity.
+     */
+    public int getPublishQueueCapacity() {
+        return publishQueueCapacity;
+    }
+
+    /**
+     * Gets the delay in milliseconds before the first reconnection attempt.
+     *
+     * @return The minimum reconnection delay in milliseconds.
+     */
+    public long getReconnectMinDelayMillis() {
+        return reconnectMinDelayMillis;
+    }
+
+    /**
+     * Gets the maximum delay in milliseconds between reconnection attempts.
+     *
+     * @return The maximum reconnection delay in milliseconds.
+     */
+    public long getReconnectMaxDelayMillis() {
+        return reconnectMaxDelayMillis;
+    }
+
+    /**
+     * Gets the maximum number of sent messages kept while the messenger is disconnected.
+     *
+     * @return The outbound buffer capacity, 0 if sending while disconnected throws.
+     */
+    public int getOutboundBufferCapacity() {
+        return outboundBufferCapacity;
+    }
+
+    /**
+     * Gets the prefix for the messenger thread names.
+     *
+     * @return The thread name prefix.
+     */
+    @NotNull
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    /**
+     * Builder class for creating MessengerConfig instances.
+     */
+    public static class Builder {
+
+        private String serverId;
+        private SelfDelivery selfDelivery;
+        private int dispatchThreads;
+        private int dispatchQueueCapacity;
+        private int publishBatchSize;
+        private long publishLingerMillis;
+        private int publishQueueCapacity;
+        private long reconnectMinDelayMillis;
+        private long reconnectMaxDelayMillis;
+        private int outboundBufferCapacity;
+        private String threadNamePrefix;
+
+        /**
+         * Creates a new Builder instance.
+         */
+        public Builder() {
+            this.selfDelivery = SelfDelivery.REMOTE;
+            this.dispatchThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+            this.dispatchQueueCapacity = 10000;
+            this.publishBatchSize = 1;
+            this.publishLingerMillis = 0;
+            this.publishQueueCapacity = 10000;
+            this.reconnectMinDelayMillis = 500;
+            this.reconnectMaxDelayMillis = 30000;
+            this.outboundBufferCapacity = 1000;
+            this.threadNamePrefix = "SmoothBase-Messenger";
+        }
+
+        /**
+         * Sets the identifier of this server (e.g. its name in the proxy configuration), which other servers use to
+         * send messages to it. It must be unique on the network.
+         *
+         * @param serverId The server identifier, or null if the server cannot be addressed directly.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setServerId(@Nullable String serverId) {
+            this.serverId = serverId;
+            return this;
+        }
+
+        /**
+         * Sets how the messages sent by this server to itself (broadcasts, messages to its own identifier or to the
+         * topics it is subscribed to) are delivered. Modes other than {@link SelfDelivery#REMOTE} require a server
+         * identifier.
+         *
+         * @param selfDelivery The self delivery mode.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setSelfDelivery(@NotNull SelfDelivery selfDelivery) {
+            this.selfDelivery = selfDelivery;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads handling the received messages. Messages of the same type are always handled by
+         * the same thread, in the order they were received.
+         *
+         * @param dispatchThreads The number of dispatch threads, or 0 to handle messages on the thread receiving them.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setDispatchThreads(int dispatchThreads) {
+            this.dispatchThreads = dispatchThreads;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of received messages waiting for each dispatch thread. Messages received while the
+         * queue is full are dropped (and counted).
+         *
+         * @param dispatchQueueCapacity The dispatch queue capacity.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setDispatchQueueCapacity(int dispatchQueueCapacity) {
+            this.dispatchQueueCapacity = dispatchQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of messages sent in a batch. Above 1, sent messages are queued and published in
+         * batches by a dedicated thread (a single connection and round trip per batch), and publishing failures are
+         * logged instead of thrown to the sender (the messages being kept in the outbound buffer, if any).
+         *
+         * @param publishBatchSize The publish batch size, or 1 to send each message from the thread sending it.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setPublishBatchSize(int publishBatchSize) {
+            this.publishBatchSize = publishBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds a sent message waits for its batch to fill. With 0, the queued
+         * messages are sent right away, so batches only grow when messages are sent faster than they are published.
+         *
+         * @param publishLingerMillis The publish linger time in milliseconds.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setPublishLingerMillis(long publishLingerMillis) {
+            this.publishLingerMillis = publishLingerMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of sent messages waiting for their batch. Sending a message while the queue is full
+         * throws an {@link IllegalStateException}.
+         *
+         * @param publishQueueCapacity The publish queue capacity.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setPublishQueueCapacity(int publishQueueCapacity) {
+            this.publishQueueCapacity = publishQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the delays between reconnection attempts after the connection to the messaging service is lost. The
+         * delay starts at the minimum and doubles after each failed attempt up to the maximum, and each delay is
+         * randomized between its half and its full value, so that servers losing their connection together do not
+         * all reconnect at the same moment.
+         *
+         * @param reconnectMinDelayMillis The delay in milliseconds before the first reconnection attempt.
+         * @param reconnectMaxDelayMillis The maximum delay in milliseconds between reconnection attempts.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setReconnectDelays(long reconnectMinDelayMillis, long reconnectMaxDelayMillis) {
+            this.reconnectMinDelayMillis = reconnectMinDelayMillis;
+            this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of sent messages kept while the messenger is disconnected, and sent once it is
+         * reconnected. When the buffer is full, the oldest messages are dropped (and counted).
+         *
+         * @param outboundBufferCapacity The outbound buffer capacity, or 0 to throw to the sender while disconnected.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setOutboundBufferCapacity(int outboundBufferCapacity) {
+            this.outboundBufferCapacity = outboundBufferCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the prefix for the messenger thread names.
+         *
+         * @param threadNamePrefix The thread name prefix.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setThreadNamePrefix(@NotNull String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+            return this;
+        }
+
+        /**
+         * Builds and returns a MessengerConfig instance with the current configuration.
+         *
+         * @return The created MessengerConfig instance.
+         */
+        @NotNull
+        public MessengerConfig build() {
+            return new MessengerConfig(serverId, selfDelivery, dispatchThreads, dispatchQueueCapacity,
+                    publishBatchSize, publishLingerMillis, publishQueueCapacity, reconnectMinDelayMillis,
+                    reconnectMaxDelayMillis, outboundBufferCapacity, threadNamePrefix);
+        }
+    }
+
+    /**
+     * Enum representing how the messages sent by a server to itself are delivered.
+     */
+    public enum SelfDelivery {
+        /**
+         * The messages go through the messaging service and back, like the messages of the other servers.
+         */
+        REMOTE,
+        /**
+         * The messages are not delivered to the server sending them.
+         */
+        SKIP,
+        /**
+         * The messages are handled directly in the process, without being decoded, and their copy coming back from
+         * the messaging service is ignored. The handlers receive the sent object itself, not a copy.
+         */
+        LOCAL
+    }
+}
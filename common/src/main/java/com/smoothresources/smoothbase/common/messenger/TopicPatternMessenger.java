@@ -0,0 +1,16 @@
+package com.smoothresources.smoothbase.common.messenger;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Messenger able to subscribe to every topic matching a pattern, in addition to single topics.
+ */
+public interface TopicPatternMessenger extends Messenger {
+
+    /**
+     * Subscribes to the topics matching a glob-style pattern (e.g. "economy.*").
+     *
+     * @param pattern The topic pattern.
+     */
+    void subscribeTopicPattern(@NotNull String pattern);
+}
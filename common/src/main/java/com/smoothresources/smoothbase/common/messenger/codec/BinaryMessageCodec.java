@@ -0,0 +1,253 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Codec writing the message types registered in a {@link MessageTypeRegistry} in a compact binary form, and the other
+ * types as JSON envelopes (see {@link JsonEnvelopeCodec}).
+ * <p>
+ * A binary message starts with the {@link #MAGIC} byte (JSON envelopes start with '{'), followed by the kind of the
+ * message (with its high bit set if the message has an origin), the id of its type as a variable-length integer, the
+ * identifier of the sending server as a length-prefixed UTF-8 string (if any), the conversation UUID as 16 bytes
+ * (conversations only) and the payload, encoded with the codec registered for the type or as UTF-8 JSON by default.
+ * Every server must use the same registrations.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    /**
+     * First byte of a binary message.
+     */
+    public static final byte MAGIC = (byte) 0xB1;
+
+    private static final Envelope.Kind[] KINDS = Envelope.Kind.values();
+    private static final int ORIGIN_FLAG = 0x80;
+    private static final int MAX_HEADER_SIZE = 2 + 5 + 5 + 16;
+
+    private final Serializer serializer;
+    private final MessageTypeRegistry registry;
+    private final JsonEnvelopeCodec jsonCodec;
+
+    /**
+     * Creates a new BinaryMessageCodec.
+     *
+     * @param serializer The serializer for the payloads without a dedicated codec and the unregistered types.
+     * @param registry   The registry of the types sent in binary form.
+     */
+    public BinaryMessageCodec(@NotNull Serializer serializer, @NotNull MessageTypeRegistry registry) {
+        this.serializer = serializer;
+        this.registry = registry;
+        this.jsonCodec = new JsonEnvelopeCodec(serializer);
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Envelope envelope) {
+        MessageTypeRegistry.Entry entry = registry.get(envelope.getType());
+        if (entry == null) {
+            return jsonCodec.encode(envelope);
+        }
+
+        return frame(entry, envelope.getKind(), envelope.getConversationUUID(), envelope.getOrigin(),
+                encodePayload(entry, envelope.getPayload()));
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Envelope.Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                         @Nullable String origin, @NotNull String payloadJson) {
+        MessageTypeRegistry.Entry entry = registry.get(type);
+        if (entry == null) {
+            return jsonCodec.encode(kind, type, conversationUUID, origin, payloadJson);
+        }
+
+        if (entry.getCodec() == null) {
+            return frame(entry, kind, conversationUUID, origin, payloadJson.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Object payload = serializer.deserialize(payloadJson, type);
+        if (payload == null) {
+            throw new IllegalArgumentException("Cannot encode a null payload");
+        }
+
+        return frame(entry, kind, conversationUUID, origin, encodePayload(entry, payload));
+    }
+
+    @NotNull
+    @Override
+    public Envelope decode(@NotNull byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return jsonCodec.decode(data);
+        }
+
+        int kindIndex = data.length > 1 ? data[1] & 0xFF & ~ORIGIN_FLAG : -1;
+        if (kindIndex < 0 || kindIndex >= KINDS.length) {
+            throw new IllegalArgumentException("Unknown message kind: " + kindIndex);
+        }
+
+        Envelope.Kind kind = KINDS[kindIndex];
+        int[] position = {2};
+        int id = readVarInt(data, position);
+        MessageTypeRegistry.Entry entry = registry.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown message type id: " + id);
+        }
+
+        String origin = (data[1] & ORIGIN_FLAG) == 0 ? null : readString(data, position);
+
+        UUID conversationUUID = null;
+        if (kind != Envelope.Kind.MESSAGE) {
+            if (data.length < position[0] + 16) {
+                throw new IllegalArgumentException("Truncated message");
+            }
+
+            conversationUUID = new UUID(readLong(data, position[0]), readLong(data, position[0] + 8));
+            position[0] += 16;
+        }
+
+        int offset = position[0];
+        int length = data.length - offset;
+        PayloadCodec<?> codec = entry.getCodec();
+        Object payload = codec == null
+                ? serializer.deserialize(new String(data, offset, length, StandardCharsets.UTF_8), entry.getType())
+                : codec.decode(data, offset, length);
+        if (payload == null) {
+            throw new IllegalArgumentException("Missing payload");
+        }
+
+        return new Envelope(kind, entry.getType(), conversationUUID, origin, payload);
+    }
+
+    @Override
+    public int routingKey(@NotNull byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return jsonCodec.routingKey(data);
+        }
+
+        // Only reads the type id
+        return readVarInt(data, new int[]{2});
+    }
+
+    @Nullable
+    @Override
+    public String originOf(@NotNull byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return jsonCodec.originOf(data);
+        }
+
+        if (data.length < 2 || (data[1] & ORIGIN_FLAG) == 0) {
+            return null;
+        }
+
+        // Skips the type id
+        int[] position = {2};
+        readVarInt(data, position);
+        return readString(data, position);
+    }
+
+    /**
+     * Gets the registry of the types sent in binary form.
+     *
+     * @return The message type registry.
+     */
+    @NotNull
+    public MessageTypeRegistry getRegistry() {
+        return registry;
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private byte[] encodePayload(@NotNull MessageTypeRegistry.Entry entry, @NotNull Object payload) {
+        PayloadCodec<Object> codec = (PayloadCodec<Object>) entry.getCodec();
+        if (codec == null) {
+            return serializer.serialize(payload).getBytes(StandardCharsets.UTF_8);
+        }
+
+        return codec.encode(payload);
+    }
+
+    @NotNull
+    private static byte[] frame(@NotNull MessageTypeRegistry.Entry entry, @NotNull Envelope.Kind kind,
+                                @Nullable UUID conversationUUID, @Nullable String origin, @NotNull byte[] payload) {
+        byte[] originBytes = origin == null ? null : origin.getBytes(StandardCharsets.UTF_8);
+        byte[] header = new byte[MAX_HEADER_SIZE + (originBytes == null ? 0 : originBytes.length)];
+        header[0] = MAGIC;
+        header[1] = (byte) (kind.ordinal() | (originBytes == null ? 0 : ORIGIN_FLAG));
+        int position = writeVarInt(header, 2, entry.getId());
+        if (originBytes != null) {
+            position = writeVarInt(header, position, originBytes.length);
+            System.arraycopy(originBytes, 0, header, position, originBytes.length);
+            position += originBytes.length;
+        }
+
+        if (conversationUUID != null) {
+            writeLong(header, position, conversationUUID.getMostSignificantBits());
+            writeLong(header, position + 8, conversationUUID.getLeastSignificantBits());
+            position += 16;
+        }
+
+        byte[] data = new byte[position + payload.length];
+        System.arraycopy(header, 0, data, 0, position);
+        System.arraycopy(payload, 0, data, position, payload.length);
+        return data;
+    }
+
+    private static int writeVarInt(@NotNull byte[] data, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        data[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarInt(@NotNull byte[] data, @NotNull int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated message");
+            }
+
+            byte b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed message header");
+    }
+
+    @NotNull
+    private static String readString(@NotNull byte[] data, @NotNull int[] position) {
+        int length = readVarInt(data, position);
+        if (length < 0 || data.length - position[0] < length) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+
+        String value = new String(data, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return value;
+    }
+
+    private static void writeLong(@NotNull byte[] data, int position, long value) {
+        for (int i = 7; i >= 0; i--) {
+            data[position + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(@NotNull byte[] data, int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[position + i] & 0xFF);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,282 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec compressing the large messages encoded by another codec with Deflate.
+ * <p>
+ * Messages smaller than the threshold, or which do not shrink, are left as encoded by the other codec. A compressed
+ * message starts with the {@link #MAGIC} byte (never the first byte of a JSON envelope or of a binary message),
+ * followed by the routing key and the origin of the message, kept uncompressed so that the dispatch thread of a
+ * message can be chosen and the own messages of a server recognized without inflating it, the size of the message as
+ * a variable-length integer and the compressed message. An optional preset dictionary (e.g. a sample of typical
+ * messages, such as serialized item stacks) improves the compression of the messages sharing its content. Every
+ * server must use the same dictionary, and a server receiving compressed messages must use this codec even if its own
+ * threshold differs.
+ */
+public class CompressingMessageCodec implements MessageCodec {
+
+    /**
+     * First byte of a compressed message.
+     */
+    public static final byte MAGIC = (byte) 0xC5;
+
+    /**
+     * Maximum size of a decompressed message, rejecting the messages which would inflate to an unreasonable size.
+     */
+    public static final int MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+    private final MessageCodec codec;
+    private final int threshold;
+    private final byte[] dictionary;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * Creates a new CompressingMessageCodec with the fastest compression level and no dictionary.
+     *
+     * @param codec     The codec encoding the messages before their compression.
+     * @param threshold The size in bytes from which messages are compressed.
+     */
+    public CompressingMessageCodec(@NotNull MessageCodec codec, int threshold) {
+        this(codec, threshold, Deflater.BEST_SPEED, null);
+    }
+
+    /**
+     * Creates a new CompressingMessageCodec.
+     *
+     * @param codec      The codec encoding the messages before their compression.
+     * @param threshold  The size in bytes from which messages are compressed.
+     * @param level      The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     * @param dictionary The preset dictionary (the same on every server), or null to compress without one.
+     */
+    public CompressingMessageCodec(@NotNull MessageCodec codec, int threshold, int level,
+                                   @Nullable byte[] dictionary) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+
+        this.codec = codec;
+        this.threshold = threshold;
+        this.dictionary = dictionary == null ? null : dictionary.clone();
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Envelope envelope) {
+        return compress(codec.encode(envelope), envelope.getOrigin());
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Envelope.Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                         @Nullable String origin, @NotNull String payloadJson) {
+        return compress(codec.encode(kind, type, conversationUUID, origin, payloadJson), origin);
+    }
+
+    @NotNull
+    @Override
+    public Envelope decode(@NotNull byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return codec.decode(data);
+        }
+
+        return codec.decode(decompress(data));
+    }
+
+    @Nullable
+    @Override
+    public String originOf(@NotNull byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return codec.originOf(data);
+        }
+
+        int[] position = {5};
+        int length = readVarInt(data, position);
+        if (length == 0) {
+            return null;
+        }
+
+        if (length < 0 || data.length - position[0] < length) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+
+        return new String(data, position[0], length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int routingKey(@NotNull byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return codec.routingKey(data);
+        }
+
+        if (data.length < 5) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+
+        return readInt(data, 1);
+    }
+
+    /**
+     * Gets the number of messages compressed by this codec.
+     *
+     * @return The number of compressed messages.
+     */
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    /**
+     * Gets the number of bytes saved by compressing messages.
+     *
+     * @return The number of saved bytes.
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    @NotNull
+    private byte[] compress(@NotNull byte[] data, @Nullable String origin) {
+        if (data.length < threshold) {
+            return data;
+        }
+
+        byte[] originBytes = origin == null ? new byte[0] : origin.getBytes(StandardCharsets.UTF_8);
+        int headerSize = 1 + 4 + varIntSize(originBytes.length) + originBytes.length + varIntSize(data.length);
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+
+        deflater.setInput(data);
+        deflater.finish();
+
+        // The compressed message is only kept if it is smaller than the original one
+        byte[] compressed = new byte[data.length];
+        int position = headerSize;
+        while (!deflater.finished() && position < compressed.length) {
+            position += deflater.deflate(compressed, position, compressed.length - position);
+        }
+
+        if (!deflater.finished()) {
+            return data;
+        }
+
+        compressed[0] = MAGIC;
+        writeInt(compressed, 1, codec.routingKey(data));
+        int headerPosition = writeVarInt(compressed, 5, originBytes.length);
+        System.arraycopy(originBytes, 0, compressed, headerPosition, originBytes.length);
+        writeVarInt(compressed, headerPosition + originBytes.length, data.length);
+
+        compressedCount.increment();
+        savedBytes.add(data.length - position);
+        return Arrays.copyOf(compressed, position);
+    }
+
+    @NotNull
+    private byte[] decompress(@NotNull byte[] data) {
+        int[] position = {5};
+        // Skips the origin
+        int originLength = readVarInt(data, position);
+        position[0] += originLength;
+        int size = readVarInt(data, position);
+        if (size < 0 || size > MAX_DECOMPRESSED_SIZE) {
+            throw new IllegalArgumentException("Invalid decompressed size: " + size);
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, position[0], data.length - position[0]);
+
+        byte[] decompressed = new byte[size];
+        try {
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int inflated = inflater.inflate(decompressed, length, size - length);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary() && dictionary != null) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new IllegalArgumentException("Truncated compressed message");
+                    }
+                }
+
+                length += inflated;
+            }
+
+            if (length != size || !inflater.finished()) {
+                throw new IllegalArgumentException("Compressed message size mismatch");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed message: " + e.getMessage());
+        }
+
+        return decompressed;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+
+    private static int writeVarInt(@NotNull byte[] data, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        data[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarInt(@NotNull byte[] data, @NotNull int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated message");
+            }
+
+            byte b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed message size");
+    }
+
+    private static void writeInt(@NotNull byte[] data, int position, int value) {
+        data[position] = (byte) (value >>> 24);
+        data[position + 1] = (byte) (value >>> 16);
+        data[position + 2] = (byte) (value >>> 8);
+        data[position + 3] = (byte) value;
+    }
+
+    private static int readInt(@NotNull byte[] data, int position) {
+        return (data[position] & 0xFF) << 24 | (data[position + 1] & 0xFF) << 16
+                | (data[position + 2] & 0xFF) << 8 | data[position + 3] & 0xFF;
+    }
+}
@@ -0,0 +1,146 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Represents a decoded messenger message: its kind, the class of its payload, the conversation it belongs to, the
+ * server which sent it and the payload itself, deserialized into that class.
+ */
+public class Envelope {
+
+    private final Kind kind;
+    private final Class<?> type;
+    private final UUID conversationUUID;
+    private final String origin;
+    private final Object payload;
+
+    /**
+     * Creates a new Envelope.
+     *
+     * @param kind             The kind of the message.
+     * @param type             The class of the payload.
+     * @param conversationUUID The unique identifier of the conversation, or null for a plain message.
+     * @param payload          The payload.
+     */
+    public Envelope(@NotNull Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                    @NotNull Object payload) {
+        this(kind, type, conversationUUID, null, payload);
+    }
+
+    /**
+     * Creates a new Envelope.
+     *
+     * @param kind             The kind of the message.
+     * @param type             The class of the payload.
+     * @param conversationUUID The unique identifier of the conversation, or null for a plain message.
+     * @param origin           The identifier of the server sending the message, or null if it has none.
+     * @param payload          The payload.
+     */
+    public Envelope(@NotNull Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                    @Nullable String origin, @NotNull Object payload) {
+        if (kind != Kind.MESSAGE && conversationUUID == null) {
+            throw new IllegalArgumentException("A conversation message must have a conversation UUID");
+        }
+
+        this.kind = kind;
+        this.type = type;
+        this.conversationUUID = conversationUUID;
+        this.origin = origin;
+        this.payload = payload;
+    }
+
+    /**
+     * Gets the kind of the message.
+     *
+     * @return The kind of the message.
+     */
+    @NotNull
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the class of the payload.
+     *
+     * @return The class of the payload.
+     */
+    @NotNull
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Gets the unique identifier of the conversation.
+     *
+     * @return The unique identifier, or null if the message is not part of a conversation.
+     */
+    @Nullable
+    public UUID getConversationUUID() {
+        return conversationUUID;
+    }
+
+    /**
+     * Gets the identifier of the server which sent the message.
+     *
+     * @return The server identifier, or null if the sending server has none.
+     */
+    @Nullable
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Gets the payload.
+     *
+     * @return The payload.
+     */
+    @NotNull
+    public Object getPayload() {
+        return payload;
+    }
+
+    /**
+     * Enum representing the kind of a message.
+     */
+    public enum Kind {
+        MESSAGE("m"),
+        REQUEST("q"),
+        RESPONSE("r");
+
+        private final String id;
+
+        Kind(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Gets the identifier of the kind on the wire.
+         *
+         * @return The identifier.
+         */
+        @NotNull
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Gets the kind matching an identifier.
+         *
+         * @param id The identifier.
+         * @return The kind, or null if no kind matches.
+         */
+        @Nullable
+        public static Kind fromId(@NotNull String id) {
+            for (Kind kind : values()) {
+                if (kind.id.equals(id)) {
+                    return kind;
+                }
+            }
+
+            return null;
+        }
+    }
+}
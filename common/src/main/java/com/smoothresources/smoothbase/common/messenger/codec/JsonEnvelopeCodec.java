@@ -0,0 +1,266 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.smoothresources.smoothbase.common.messenger.Conversation;
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codec writing messenger messages as a compact JSON envelope, parsed exactly once on reception.
+ * <p>
+ * The envelope carries the identifier of the sending server (first, so that it is read without parsing the message),
+ * the kind of the message, the class of the payload, the conversation UUID and the payload embedded as a JSON value
+ * (not as an escaped string): {@code {"o":"lobby-1","t":"q","c":"com.example.Request","i":"...","p":{...}}}.
+ * The payload class goes through the class adapter of the serializer, so the class whitelist still applies, and is
+ * then cached. Messages in the legacy format (a serialized {@link Conversation} or message, recognized by its
+ * {@code "json"} key) are still decoded.
+ */
+public class JsonEnvelopeCodec implements MessageCodec {
+
+    private static final String ORIGIN_KEY = "o";
+    private static final String KIND_KEY = "t";
+    private static final String CLASS_KEY = "c";
+    private static final String CONVERSATION_KEY = "i";
+    private static final String PAYLOAD_KEY = "p";
+    private static final String LEGACY_JSON_KEY = "json";
+    private static final byte[] CLASS_PREFIX = ("\"" + CLASS_KEY + "\":\"").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ORIGIN_PREFIX = ("{\"" + ORIGIN_KEY + "\":\"").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LEGACY_CLASS_PREFIX = "\"clazz\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private final Serializer serializer;
+    // Only holds classes which passed the whitelist
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new JsonEnvelopeCodec.
+     *
+     * @param serializer The serializer for the payloads (with the class adapter registered).
+     */
+    public JsonEnvelopeCodec(@NotNull Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Envelope envelope) {
+        return encode(envelope.getKind(), envelope.getType(), envelope.getConversationUUID(), envelope.getOrigin(),
+                serializer.serialize(envelope.getPayload()));
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Envelope.Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                         @Nullable String origin, @NotNull String payloadJson) {
+        return encodeToString(kind, type, conversationUUID, origin, payloadJson).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    @Override
+    public Envelope decode(@NotNull byte[] data) {
+        return decode(new String(data, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int routingKey(@NotNull byte[] data) {
+        // The class is written right after the kind, so it is found without parsing the payload
+        int start = indexOf(data, CLASS_PREFIX);
+        if (start == -1) {
+            start = indexOf(data, LEGACY_CLASS_PREFIX);
+            if (start == -1) {
+                return 0;
+            }
+        }
+
+        int hash = 1;
+        for (int i = start; i < data.length && data[i] != '"'; i++) {
+            hash = 31 * hash + data[i];
+        }
+
+        return hash;
+    }
+
+    @Nullable
+    @Override
+    public String originOf(@NotNull byte[] data) {
+        if (!startsWith(data, ORIGIN_PREFIX)) {
+            return null;
+        }
+
+        int start = ORIGIN_PREFIX.length;
+        for (int i = start; i < data.length; i++) {
+            if (data[i] == '"') {
+                return new String(data, start, i - start, StandardCharsets.UTF_8);
+            }
+
+            if (data[i] == '\\') {
+                // Escaped identifier: rare enough to parse the message
+                JsonElement origin = JsonParser.parseString(new String(data, StandardCharsets.UTF_8))
+                        .getAsJsonObject().get(ORIGIN_KEY);
+                return origin == null ? null : origin.getAsString();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Encodes a message to a JSON string.
+     *
+     * @param kind             The kind of the message.
+     * @param type             The class of the payload.
+     * @param conversationUUID The unique identifier of the conversation, or null for a plain message.
+     * @param origin           The identifier of the server sending the message, or null if it has none.
+     * @param payloadJson      The payload, serialized to JSON.
+     * @return The encoded message.
+     */
+    @NotNull
+    public String encodeToString(@NotNull Envelope.Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                                 @Nullable String origin, @NotNull String payloadJson) {
+        StringWriter out = new StringWriter(payloadJson.length() + 96);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            if (origin != null) {
+                writer.name(ORIGIN_KEY).value(origin);
+            }
+
+            writer.name(KIND_KEY).value(kind.getId());
+            writer.name(CLASS_KEY).value(type.getName());
+            if (conversationUUID != null) {
+                writer.name(CONVERSATION_KEY).value(conversationUUID.toString());
+            }
+
+            // Written as is, without parsing it again
+            writer.name(PAYLOAD_KEY).jsonValue(payloadJson);
+            writer.endObject();
+        } catch (IOException e) {
+            // Not thrown by a StringWriter
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Decodes a message from a JSON string.
+     *
+     * @param message The encoded message.
+     * @return The decoded message.
+     * @throws JsonParseException If the message is malformed, or its payload class is not whitelisted.
+     */
+    @NotNull
+    public Envelope decode(@NotNull String message) {
+        JsonElement element = JsonParser.parseString(message);
+        if (!element.isJsonObject()) {
+            throw new JsonParseException("Message is not a JSON object");
+        }
+
+        JsonObject root = element.getAsJsonObject();
+        if (root.has(LEGACY_JSON_KEY)) {
+            return decodeLegacy(root);
+        }
+
+        JsonElement kindElement = root.get(KIND_KEY);
+        Envelope.Kind kind = kindElement == null ? null : Envelope.Kind.fromId(kindElement.getAsString());
+        if (kind == null) {
+            throw new JsonParseException("Unknown message kind: " + kindElement);
+        }
+
+        JsonElement classElement = root.get(CLASS_KEY);
+        if (classElement == null) {
+            throw new JsonParseException("Missing payload class");
+        }
+
+        Class<?> type = resolveClass(classElement);
+        JsonElement conversationElement = root.get(CONVERSATION_KEY);
+        UUID conversationUUID = conversationElement == null ? null : UUID.fromString(conversationElement.getAsString());
+        JsonElement originElement = root.get(ORIGIN_KEY);
+        Object payload = serializer.deserialize(root.get(PAYLOAD_KEY), type);
+        if (payload == null) {
+            throw new JsonParseException("Missing payload");
+        }
+
+        return new Envelope(kind, type, conversationUUID, originElement == null ? null : originElement.getAsString(),
+                payload);
+    }
+
+    private static boolean startsWith(@NotNull byte[] data, @NotNull byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(@NotNull byte[] data, @NotNull byte[] prefix) {
+        outer:
+        for (int i = 0; i <= data.length - prefix.length; i++) {
+            for (int j = 0; j < prefix.length; j++) {
+                if (data[i + j] != prefix[j]) {
+                    continue outer;
+                }
+            }
+
+            return i + prefix.length;
+        }
+
+        return -1;
+    }
+
+    @NotNull
+    private Class<?> resolveClass(@NotNull JsonElement classElement) {
+        String className = classElement.getAsString();
+        Class<?> type = classes.get(className);
+        if (type == null) {
+            type = serializer.deserialize(classElement, Class.class);
+            if (type == null) {
+                throw new JsonParseException("Missing payload class");
+            }
+
+            classes.put(className, type);
+        }
+
+        return type;
+    }
+
+    @NotNull
+    private Envelope decodeLegacy(@NotNull JsonObject root) {
+        // A plain message is read as a conversation without type
+        Conversation conversation = serializer.deserialize(root, Conversation.class);
+        if (conversation == null || conversation.getClazz() == null) {
+            throw new JsonParseException("Invalid legacy message");
+        }
+
+        Object payload = serializer.deserialize(conversation.getJson(), conversation.getClazz());
+        if (payload == null) {
+            throw new JsonParseException("Missing payload");
+        }
+
+        if (conversation.getType() == null) {
+            return new Envelope(Envelope.Kind.MESSAGE, conversation.getClazz(), null, payload);
+        }
+
+        Envelope.Kind kind = conversation.getType() == Conversation.Type.REQUEST
+                ? Envelope.Kind.REQUEST
+                : Envelope.Kind.RESPONSE;
+        return new Envelope(kind, conversation.getClazz(), conversation.getConversationUUID(), payload);
+    }
+}
@@ -0,0 +1,64 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Interface for encoding messenger messages to bytes and decoding them back.
+ */
+public interface MessageCodec {
+
+    /**
+     * Encodes a message.
+     *
+     * @param envelope The message to encode.
+     * @return The encoded message.
+     */
+    @NotNull
+    byte[] encode(@NotNull Envelope envelope);
+
+    /**
+     * Encodes a message whose payload has already been serialized to JSON (e.g. a {@code Message}).
+     *
+     * @param kind             The kind of the message.
+     * @param type             The class of the payload.
+     * @param conversationUUID The unique identifier of the conversation, or null for a plain message.
+     * @param origin           The identifier of the server sending the message, or null if it has none.
+     * @param payloadJson      The payload, serialized to JSON.
+     * @return The encoded message.
+     */
+    @NotNull
+    byte[] encode(@NotNull Envelope.Kind kind, @NotNull Class<?> type, @Nullable UUID conversationUUID,
+                  @Nullable String origin, @NotNull String payloadJson);
+
+    /**
+     * Decodes a message.
+     *
+     * @param data The encoded message.
+     * @return The decoded message.
+     * @throws RuntimeException If the message is malformed or its payload type is not allowed.
+     */
+    @NotNull
+    Envelope decode(@NotNull byte[] data);
+
+    /**
+     * Computes the routing key of an encoded message without decoding it, from the type of its payload. Messages of
+     * the same type have the same routing key, so that they can be handled in order by the same thread.
+     *
+     * @param data The encoded message.
+     * @return The routing key.
+     */
+    int routingKey(@NotNull byte[] data);
+
+    /**
+     * Reads the identifier of the server which sent an encoded message without decoding it, so that a server can
+     * recognize its own messages cheaply.
+     *
+     * @param data The encoded message.
+     * @return The server identifier, or null if the sending server has none.
+     */
+    @Nullable
+    String originOf(@NotNull byte[] data);
+}
@@ -0,0 +1,131 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the message types sent in binary form by a {@link BinaryMessageCodec}, each identified by an integer id
+ * instead of its class name. The same ids must be registered on every server.
+ */
+public class MessageTypeRegistry {
+
+    private final Map<Class<?>, Entry> byType = new ConcurrentHashMap<>();
+    private final Map<Integer, Entry> byId = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a message type whose payload is encoded with the serializer (as UTF-8 JSON).
+     *
+     * @param id   The id of the type.
+     * @param type The class of the type.
+     * @return The current MessageTypeRegistry instance.
+     * @throws IllegalArgumentException If the id or the type is already registered.
+     */
+    @NotNull
+    public MessageTypeRegistry register(int id, @NotNull Class<?> type) {
+        return register(new Entry(id, type, null));
+    }
+
+    /**
+     * Registers a message type whose payload is encoded with a dedicated codec.
+     *
+     * @param id    The id of the type.
+     * @param type  The class of the type.
+     * @param codec The codec of the payload.
+     * @param <T>   The type of the payload.
+     * @return The current MessageTypeRegistry instance.
+     * @throws IllegalArgumentException If the id or the type is already registered.
+     */
+    @NotNull
+    public <T> MessageTypeRegistry register(int id, @NotNull Class<T> type, @NotNull PayloadCodec<T> codec) {
+        return register(new Entry(id, type, codec));
+    }
+
+    /**
+     * Gets the registration of a type.
+     *
+     * @param type The class of the type.
+     * @return The registration, or null if the type is not registered.
+     */
+    @Nullable
+    public Entry get(@NotNull Class<?> type) {
+        return byType.get(type);
+    }
+
+    /**
+     * Gets the registration of an id.
+     *
+     * @param id The id of the type.
+     * @return The registration, or null if the id is not registered.
+     */
+    @Nullable
+    public Entry get(int id) {
+        return byId.get(id);
+    }
+
+    @NotNull
+    private synchronized MessageTypeRegistry register(@NotNull Entry entry) {
+        if (entry.id < 0) {
+            throw new IllegalArgumentException("Message type id must not be negative");
+        }
+
+        if (byId.containsKey(entry.id)) {
+            throw new IllegalArgumentException("Message type id " + entry.id + " is already registered");
+        }
+
+        if (byType.containsKey(entry.type)) {
+            throw new IllegalArgumentException("Message type " + entry.type.getName() + " is already registered");
+        }
+
+        byType.put(entry.type, entry);
+        byId.put(entry.id, entry);
+        return this;
+    }
+
+    /**
+     * Registration of a message type.
+     */
+    public static class Entry {
+
+        private final int id;
+        private final Class<?> type;
+        private final PayloadCodec<?> codec;
+
+        private Entry(int id, @NotNull Class<?> type, @Nullable PayloadCodec<?> codec) {
+            this.id = id;
+            this.type = type;
+            this.codec = codec;
+        }
+
+        /**
+         * Gets the id of the type.
+         *
+         * @return The id.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Gets the class of the type.
+         *
+         * @return The class.
+         */
+        @NotNull
+        public Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * Gets the codec of the payload.
+         *
+         * @return The codec, or null if the payload is encoded with the serializer.
+         */
+        @Nullable
+        public PayloadCodec<?> getCodec() {
+            return codec;
+        }
+    }
+}
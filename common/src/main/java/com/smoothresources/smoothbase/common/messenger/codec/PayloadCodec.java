@@ -0,0 +1,32 @@
+package com.smoothresources.smoothbase.common.messenger.codec;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Interface for encoding the payload of a message type registered in a {@link MessageTypeRegistry}, for types sent
+ * often enough to be worth a hand-written binary format (e.g. positions, made of a few numbers).
+ *
+ * @param <T> The type of the payload.
+ */
+public interface PayloadCodec<T> {
+
+    /**
+     * Encodes a payload.
+     *
+     * @param payload The payload to encode.
+     * @return The encoded payload.
+     */
+    @NotNull
+    byte[] encode(@NotNull T payload);
+
+    /**
+     * Decodes a payload.
+     *
+     * @param data   The buffer holding the encoded payload.
+     * @param offset The offset of the encoded payload in the buffer.
+     * @param length The length of the encoded payload.
+     * @return The decoded payload.
+     */
+    @NotNull
+    T decode(@NotNull byte[] data, int offset, int length);
+}
@@ -2,65 +2,214 @@ package com.smoothresources.smoothbase.common.messenger.interceptor;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * Manages the registration and invocation of interceptors.
+ * <p>
+ * Several interceptors can be registered for a class, and an object is handled by the interceptors of its class, of
+ * its superclasses and of its interfaces, by decreasing priority (then in registration order). The interceptors of a
+ * class are resolved the first time an object of that class is intercepted and cached, so intercepting is a single
+ * lookup without allocation. Registering or unregistering an interceptor replaces the whole (immutable) dispatch
+ * table, so it is safe to do while messages are intercepted from other threads.
  */
 public class InterceptorManager {
 
-    private final HashMap<Class<?>, Interceptor> interceptors = new HashMap<>();
+    private final Map<Class<?>, List<Registration>> registrations = new HashMap<>();
+    private volatile DispatchTable table = new DispatchTable(Collections.emptyMap());
+    private long registrationCount;
 
     /**
-     * Registers an interceptor for a specific class type.
+     * Registers an interceptor for a specific class type, with the default priority (0).
      *
-     * @param clazz       The class type.
+     * @param clazz       The class type (objects of its subclasses are intercepted too).
      * @param interceptor The interceptor to register.
      */
     public void registerInterceptor(@NotNull Class<?> clazz, @NotNull Interceptor interceptor) {
-        interceptors.put(clazz, interceptor);
+        registerInterceptor(clazz, interceptor, 0);
     }
 
     /**
-     * Unregisters an interceptor for a specific class type.
+     * Registers an interceptor for a specific class type.
+     *
+     * @param clazz       The class type (objects of its subclasses are intercepted too).
+     * @param interceptor The interceptor to register.
+     * @param priority    The priority of the interceptor: interceptors with a higher priority run first.
+     */
+    public synchronized void registerInterceptor(@NotNull Class<?> clazz, @NotNull Interceptor interceptor,
+                                                 int priority) {
+        registrations.computeIfAbsent(clazz, key -> new ArrayList<>())
+                .add(new Registration(interceptor, priority, registrationCount++));
+        rebuild();
+    }
+
+    /**
+     * Unregisters every interceptor registered for a specific class type.
      *
      * @param clazz The class type.
      */
-    public void unregisterInterceptor(@NotNull Class<?> clazz) {
-        interceptors.remove(clazz);
+    public synchronized void unregisterInterceptor(@NotNull Class<?> clazz) {
+        if (registrations.remove(clazz) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Unregisters an interceptor registered for a specific class type.
+     *
+     * @param clazz       The class type.
+     * @param interceptor The interceptor to unregister.
+     */
+    public synchronized void unregisterInterceptor(@NotNull Class<?> clazz, @NotNull Interceptor interceptor) {
+        List<Registration> classRegistrations = registrations.get(clazz);
+        if (classRegistrations == null || !classRegistrations.removeIf(registration ->
+                registration.interceptor == interceptor)) {
+            return;
+        }
+
+        if (classRegistrations.isEmpty()) {
+            registrations.remove(clazz);
+        }
+
+        rebuild();
+    }
+
+    /**
+     * Gets the interceptors handling the objects of a class, in the order they run.
+     *
+     * @param clazz The class of the objects.
+     * @return An unmodifiable list of the interceptors.
+     */
+    @NotNull
+    public List<Interceptor> getInterceptors(@NotNull Class<?> clazz) {
+        return Collections.unmodifiableList(Arrays.asList(table.get(clazz).interceptors));
     }
 
     /**
      * Intercepts an object.
      *
      * @param object The object to intercept.
-     * @throws IllegalArgumentException If no interceptor is found for the class type.
+     * @return True if the object was handled by at least one interceptor, false if no interceptor is registered for
+     * its class.
      */
-    public void intercept(@NotNull Object object) {
-        Interceptor interceptor = interceptors.get(object.getClass());
-
-        if (interceptor == null) {
-            throw new IllegalArgumentException("No interceptor found for class " + object.getClass().getName());
+    public boolean intercept(@NotNull Object object) {
+        Interceptor[] interceptors = table.get(object.getClass()).interceptors;
+        for (Interceptor interceptor : interceptors) {
+            interceptor.intercept(object);
         }
 
-        interceptor.intercept(object);
+        return interceptors.length > 0;
     }
 
     /**
-     * Intercepts a conversation object with a unique identifier.
+     * Intercepts a conversation object with a unique identifier. Only the conversation interceptors are invoked.
      *
-     * @param object             The object to intercept.
-     * @param conversationUUID   The unique identifier of the conversation.
-     * @throws IllegalArgumentException If no conversation interceptor is found for the class type.
+     * @param object           The object to intercept.
+     * @param conversationUUID The unique identifier of the conversation.
+     * @return True if the object was handled by at least one conversation interceptor, false if no conversation
+     * interceptor is registered for its class.
      */
-    public void intercept(@NotNull Object object, @NotNull UUID conversationUUID) {
-        Interceptor interceptor = interceptors.get(object.getClass());
+    public boolean intercept(@NotNull Object object, @NotNull UUID conversationUUID) {
+        ConversationInterceptor[] interceptors = table.get(object.getClass()).conversationInterceptors;
+        for (ConversationInterceptor interceptor : interceptors) {
+            interceptor.intercept(object, conversationUUID);
+        }
+
+        return interceptors.length > 0;
+    }
+
+    private void rebuild() {
+        Map<Class<?>, List<Registration>> snapshot = new HashMap<>();
+        registrations.forEach((clazz, classRegistrations) -> snapshot.put(clazz, List.copyOf(classRegistrations)));
+        // A new table, as the resolved classes of the previous one may be outdated
+        table = new DispatchTable(snapshot);
+    }
+
+    /**
+     * Interceptor registered for a class.
+     */
+    private static class Registration {
+
+        private static final Comparator<Registration> ORDER = Comparator
+                .comparingInt((Registration registration) -> -registration.priority)
+                .thenComparingLong(registration -> registration.order);
+
+        private final Interceptor interceptor;
+        private final int priority;
+        private final long order;
+
+        private Registration(@NotNull Interceptor interceptor, int priority, long order) {
+            this.interceptor = interceptor;
+            this.priority = priority;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Interceptors handling the objects of a class.
+     */
+    private static class Dispatch {
+
+        private final Interceptor[] interceptors;
+        private final ConversationInterceptor[] conversationInterceptors;
+
+        private Dispatch(@NotNull Interceptor[] interceptors) {
+            this.interceptors = interceptors;
+            this.conversationInterceptors = Arrays.stream(interceptors)
+                    .filter(interceptor -> interceptor instanceof ConversationInterceptor)
+                    .toArray(ConversationInterceptor[]::new);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the registrations, resolving the interceptors of each class once.
+     */
+    private static class DispatchTable extends ClassValue<Dispatch> {
+
+        private final Map<Class<?>, List<Registration>> registrations;
+
+        private DispatchTable(@NotNull Map<Class<?>, List<Registration>> registrations) {
+            this.registrations = registrations;
+        }
+
+        @Override
+        protected Dispatch computeValue(Class<?> type) {
+            Set<Class<?>> types = new LinkedHashSet<>();
+            collectTypes(type, types);
+
+            List<Registration> matching = new ArrayList<>();
+            for (Class<?> matchingType : types) {
+                matching.addAll(registrations.getOrDefault(matchingType, Collections.emptyList()));
+            }
+
+            matching.sort(Registration.ORDER);
+            // An interceptor registered for several of the types only runs once
+            Set<Interceptor> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            return new Dispatch(matching.stream()
+                    .map(registration -> registration.interceptor)
+                    .filter(seen::add)
+                    .toArray(Interceptor[]::new));
+        }
+
+        private static void collectTypes(Class<?> type, Set<Class<?>> types) {
+            if (type == null || !types.add(type)) {
+                return;
+            }
 
-        if (!(interceptor instanceof ConversationInterceptor conversationInterceptor)) {
-            throw new IllegalArgumentException("No conversation interceptor found for class " + object.getClass().getName());
-        } else {
-            conversationInterceptor.intercept(object, conversationUUID);
+            collectTypes(type.getSuperclass(), types);
+            for (Class<?> implemented : type.getInterfaces()) {
+                collectTypes(implemented, types);
+            }
         }
     }
 }
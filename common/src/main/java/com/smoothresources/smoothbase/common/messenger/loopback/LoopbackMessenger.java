@@ -0,0 +1,196 @@
+package com.smoothresources.smoothbase.common.messenger.loopback;
+
+import com.smoothresources.smoothbase.common.messenger.AbstractMessenger;
+import com.smoothresources.smoothbase.common.messenger.MessengerConfig;
+import com.smoothresources.smoothbase.common.messenger.TopicPatternMessenger;
+import com.smoothresources.smoothbase.common.messenger.codec.JsonEnvelopeCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageCodec;
+import com.smoothresources.smoothbase.common.messenger.interceptor.InterceptorManager;
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import com.smoothresources.smoothbase.common.task.TaskManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Implementation of Messenger delivering the messages inside the JVM, through a {@link LoopbackNetwork}.
+ * <p>
+ * Messages are encoded and decoded with the codec of the messenger and handled by the dispatch threads, exactly like
+ * the messages received from Redis, so interceptors and conversations behave the same (and payloads are copies, not
+ * the sent objects, unless the server delivers its own messages in process, see
+ * {@link MessengerConfig.SelfDelivery#LOCAL}), without any network hop. It is meant for single-server setups, and for
+ * tests and benchmarks on a machine without Redis, where a latency and a loss rate can be simulated on the received
+ * messages (see {@link #setSimulatedLatency(long)} and {@link #setSimulatedLossRate(double)}).
+ */
+public class LoopbackMessenger extends AbstractMessenger implements TopicPatternMessenger {
+
+    private final LoopbackNetwork network;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final Map<String, Pattern> topicPatterns = new ConcurrentHashMap<>();
+    private final LongAdder lostCount = new LongAdder();
+
+    private volatile boolean connected;
+    private volatile long simulatedLatency;
+    private volatile double simulatedLossRate;
+
+    /**
+     * Creates a new LoopbackMessenger alone on its network, with JSON envelopes and the default configuration.
+     *
+     * @param taskManager        The task manager for running asynchronous tasks.
+     * @param logger             The logger for logging messages.
+     * @param serializer         The serializer for serializing messages.
+     * @param interceptorManager The manager for handling interceptors.
+     */
+    public LoopbackMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger,
+                             @NotNull Serializer serializer, @NotNull InterceptorManager interceptorManager) {
+        this(taskManager, logger, serializer, interceptorManager, new LoopbackNetwork(),
+                new JsonEnvelopeCodec(serializer), new MessengerConfig.Builder().build());
+    }
+
+    /**
+     * Creates a new LoopbackMessenger.
+     *
+     * @param taskManager        The task manager for running asynchronous tasks.
+     * @param logger             The logger for logging messages.
+     * @param serializer         The serializer for serializing messages.
+     * @param interceptorManager The manager for handling interceptors.
+     * @param network            The network shared with the other messengers, as if they were other servers.
+     * @param codec              The codec for encoding messages (the same on every messenger of the network).
+     * @param config             The configuration of the processing of the messages.
+     */
+    public LoopbackMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger,
+                             @NotNull Serializer serializer, @NotNull InterceptorManager interceptorManager,
+                             @NotNull LoopbackNetwork network, @NotNull MessageCodec codec,
+                             @NotNull MessengerConfig config) {
+        super(taskManager, logger, serializer, interceptorManager, codec, config);
+        this.network = network;
+    }
+
+    @Override
+    public void connect() {
+        startDispatching();
+        connected = true;
+        network.join(this);
+    }
+
+    @Override
+    public void disconnect() {
+        network.leave(this);
+        connected = false;
+        stopDispatching();
+    }
+
+    @Override
+    public void subscribeTopic(@NotNull String topic) {
+        topics.add(topic);
+    }
+
+    @Override
+    public void subscribeTopicPattern(@NotNull String pattern) {
+        topicPatterns.computeIfAbsent(pattern, AbstractMessenger::compileTopicPattern);
+    }
+
+    @Override
+    public void unsubscribeTopic(@NotNull String topic) {
+        topics.remove(topic);
+    }
+
+    /**
+     * Sets the time the received messages take to arrive. Messages delivered with a latency can be handled out of
+     * order, as they would on a real network.
+     *
+     * @param simulatedLatency The latency in milliseconds, or 0 to deliver the messages right away.
+     */
+    public void setSimulatedLatency(long simulatedLatency) {
+        if (simulatedLatency < 0) {
+            throw new IllegalArgumentException("Simulated latency must not be negative");
+        }
+
+        this.simulatedLatency = simulatedLatency;
+    }
+
+    /**
+     * Sets the proportion of the received messages which are lost.
+     *
+     * @param simulatedLossRate The loss rate, between 0 (no message lost) and 1 (every message lost).
+     */
+    public void setSimulatedLossRate(double simulatedLossRate) {
+        if (simulatedLossRate < 0 || simulatedLossRate > 1) {
+            throw new IllegalArgumentException("Simulated loss rate must be between 0 and 1");
+        }
+
+        this.simulatedLossRate = simulatedLossRate;
+    }
+
+    /**
+     * Gets the number of received messages lost on purpose by the simulated loss rate.
+     *
+     * @return The number of lost messages.
+     */
+    public long getLostMessageCount() {
+        return lostCount.sum();
+    }
+
+    @Override
+    protected void publish(@NotNull byte[] data) {
+        network.broadcast(data);
+    }
+
+    @Override
+    protected void publishToServer(@NotNull String serverId, @NotNull byte[] data) {
+        network.sendToServer(serverId, data);
+    }
+
+    @Override
+    protected void publishToTopic(@NotNull String topic, @NotNull byte[] data) {
+        network.sendToTopic(topic, data);
+    }
+
+    @Nullable
+    String getServerId() {
+        return getConfig().getServerId();
+    }
+
+    @Override
+    protected boolean isSubscribed(@NotNull String topic) {
+        if (topics.contains(topic)) {
+            return true;
+        }
+
+        for (Pattern pattern : topicPatterns.values()) {
+            if (pattern.matcher(topic).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    void deliver(@NotNull byte[] data) {
+        double lossRate = simulatedLossRate;
+        if (lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate) {
+            lostCount.increment();
+            return;
+        }
+
+        long latency = simulatedLatency;
+        if (latency == 0) {
+            submit(data);
+            return;
+        }
+
+        getTaskManager().runTaskLaterAsync(() -> {
+            // Not delivered if the messenger was disconnected meanwhile
+            if (connected) {
+                submit(data);
+            }
+        }, latency);
+    }
+}
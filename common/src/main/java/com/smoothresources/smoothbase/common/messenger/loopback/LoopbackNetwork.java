@@ -0,0 +1,58 @@
+package com.smoothresources.smoothbase.common.messenger.loopback;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process network connecting {@link LoopbackMessenger}s, standing for the Redis server in a single JVM.
+ * <p>
+ * A messenger alone on its network (the default) only talks to itself, like a single server would. Several messengers
+ * sharing a network behave like servers sharing a Redis channel, which allows simulating a multi-server setup (e.g.
+ * for gathering conversations) without Redis.
+ */
+public class LoopbackNetwork {
+
+    private final List<LoopbackMessenger> members = new CopyOnWriteArrayList<>();
+
+    /**
+     * Gets the number of messengers connected to the network.
+     *
+     * @return The number of connected messengers.
+     */
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    void join(@NotNull LoopbackMessenger messenger) {
+        members.add(messenger);
+    }
+
+    void leave(@NotNull LoopbackMessenger messenger) {
+        members.remove(messenger);
+    }
+
+    void broadcast(@NotNull byte[] data) {
+        for (LoopbackMessenger member : members) {
+            member.deliver(data);
+        }
+    }
+
+    void sendToServer(@NotNull String serverId, @NotNull byte[] data) {
+        for (LoopbackMessenger member : members) {
+            if (Objects.equals(member.getServerId(), serverId)) {
+                member.deliver(data);
+            }
+        }
+    }
+
+    void sendToTopic(@NotNull String topic, @NotNull byte[] data) {
+        for (LoopbackMessenger member : members) {
+            if (member.isSubscribed(topic)) {
+                member.deliver(data);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.smoothresources.smoothbase.common.messenger.redis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays between the reconnection attempts of a messenger, doubling after each failed attempt up to a maximum.
+ * <p>
+ * Each delay is drawn between the half and the whole of its exponential value ("equal jitter"), so the servers which
+ * lost their connection together (e.g. on a Redis failover) spread their attempts instead of reconnecting all at once,
+ * while still waiting a minimum. Not thread-safe: it is used by the thread reading the messages.
+ */
+class ReconnectBackoff {
+
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private int attempts;
+
+    ReconnectBackoff(long minDelayMillis, long maxDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Gets the delay before the next attempt, and counts the attempt.
+     *
+     * @return The delay in milliseconds.
+     */
+    long nextDelayMillis() {
+        long delay = minDelayMillis;
+        for (int i = 0; i < attempts && delay < maxDelayMillis; i++) {
+            delay *= 2;
+        }
+
+        delay = Math.min(delay, maxDelayMillis);
+        attempts++;
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Starts the delays from the minimum again, once connected.
+     */
+    void reset() {
+        attempts = 0;
+    }
+
+    /**
+     * Gets the number of attempts since the last successful connection.
+     *
+     * @return The number of attempts.
+     */
+    int getAttempts() {
+        return attempts;
+    }
+}
@@ -1,38 +1,75 @@
 package com.smoothresources.smoothbase.common.messenger.redis;
 
 import com.smoothresources.smoothbase.common.connection.RedisConnection;
-import com.smoothresources.smoothbase.common.messenger.Conversation;
-import com.smoothresources.smoothbase.common.messenger.ConversationCallback;
-import com.smoothresources.smoothbase.common.messenger.Message;
-import com.smoothresources.smoothbase.common.messenger.Messenger;
+import com.smoothresources.smoothbase.common.messenger.AbstractMessenger;
+import com.smoothresources.smoothbase.common.messenger.MessengerConfig;
+import com.smoothresources.smoothbase.common.messenger.TopicPatternMessenger;
+import com.smoothresources.smoothbase.common.messenger.codec.JsonEnvelopeCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageCodec;
 import com.smoothresources.smoothbase.common.messenger.interceptor.InterceptorManager;
 import com.smoothresources.smoothbase.common.serializer.Serializer;
 import com.smoothresources.smoothbase.common.task.TaskManager;
 import org.jetbrains.annotations.NotNull;
-import org.slf4j.LoggerFactory;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
-import java.util.HashMap;
-import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 /**
- * Implementation of Messenger using Redis.
+ * Implementation of Messenger using Redis pub/sub.
+ * <p>
+ * Messages are published as bytes encoded by the codec of the messenger (see {@link AbstractMessenger}), and can be
+ * published in pipelined batches by a {@link RedisPublisher} (see
+ * {@link MessengerConfig.Builder#setPublishBatchSize(int)}).
+ * Pub/sub does not keep messages: a server which is not subscribed when a message is published, e.g. while
+ * reconnecting, never receives it. {@link RedisStreamMessenger} should be used for the messages which must not be lost.
+ * <p>
+ * When the connection is lost, the messenger reconnects after a jittered, exponentially growing delay (see
+ * {@link MessengerConfig.Builder#setReconnectDelays(long, long)}). The messages sent meanwhile are kept in a bounded
+ * buffer, in order, and published once reconnected (see
+ * {@link MessengerConfig.Builder#setOutboundBufferCapacity(int)}). The state of the connection is exposed by
+ * {@link #isConnected()}, {@link #getReconnectCount()}, {@link #getBufferedOutboundMessageCount()},
+ * {@link #getDroppedOutboundMessageCount()} and {@link #getLastMessageAgeMillis()}.
+ * <p>
+ * Besides the main channel, received by every server, messages can be addressed to a single server, on the
+ * {@code <channel>:server:<id>} channel subscribed by the server with that identifier (see
+ * {@link MessengerConfig.Builder#setServerId(String)}), or to a topic, on the {@code <channel>:topic:<topic>} channel
+ * subscribed only by the servers handling it. Servers thus only receive and decode the traffic meant for them.
  */
-public class RedisMessenger implements Messenger {
+public class RedisMessenger extends AbstractMessenger implements TopicPatternMessenger {
+
+    private static final long NO_MESSAGE = Long.MIN_VALUE;
 
-    private static final org.slf4j.Logger log = LoggerFactory.getLogger(RedisMessenger.class);
-    private final TaskManager taskManager;
-    private final Logger logger;
-    private final Serializer serializer;
-    private final InterceptorManager interceptorManager;
     private final RedisConnection connection;
     private final String channel;
+    private final byte[] channelBytes;
+    private final byte[] serverChannelBytes;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final Map<String, Pattern> topicPatterns = new ConcurrentHashMap<>();
+    private final LinkedBlockingDeque<Outbound> outboundBuffer;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    private final LongAdder droppedOutboundCount = new LongAdder();
+    private final LongAdder reconnectCount = new LongAdder();
 
-    private final HashMap<UUID, ConversationCallback> conversationCallbacks;
-    private boolean closing;
-    private Subscriber subscriber;
+    private volatile boolean closing;
+    private volatile boolean connected;
+    private volatile long lastMessageNanos = NO_MESSAGE;
+    private volatile Subscriber subscriber;
+    private volatile RedisPublisher publisher;
 
     /**
      * Creates a new RedisMessenger.
@@ -47,13 +84,50 @@ public class RedisMessenger implements Messenger {
     public RedisMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger, @NotNull Serializer serializer,
                           @NotNull InterceptorManager interceptorManager, @NotNull RedisConnection connection,
                           @NotNull String channel) {
-        this.taskManager = taskManager;
-        this.logger = logger;
-        this.serializer = serializer;
-        this.interceptorManager = interceptorManager;
+        this(taskManager, logger, serializer, interceptorManager, connection, channel,
+                new JsonEnvelopeCodec(serializer));
+    }
+
+    /**
+     * Creates a new RedisMessenger.
+     *
+     * @param taskManager         The task manager for running asynchronous tasks.
+     * @param logger              The logger for logging messages.
+     * @param serializer          The serializer for serializing messages.
+     * @param interceptorManager  The manager for handling interceptors.
+     * @param connection          The Redis connection.
+     * @param channel             The Redis channel for messaging.
+     * @param codec               The codec for encoding messages (the same on every server).
+     */
+    public RedisMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger, @NotNull Serializer serializer,
+                          @NotNull InterceptorManager interceptorManager, @NotNull RedisConnection connection,
+                          @NotNull String channel, @NotNull MessageCodec codec) {
+        this(taskManager, logger, serializer, interceptorManager, connection, channel, codec,
+                new MessengerConfig.Builder().build());
+    }
+
+    /**
+     * Creates a new RedisMessenger.
+     *
+     * @param taskManager         The task manager for running asynchronous tasks.
+     * @param logger              The logger for logging messages.
+     * @param serializer          The serializer for serializing messages.
+     * @param interceptorManager  The manager for handling interceptors.
+     * @param connection          The Redis connection.
+     * @param channel             The Redis channel for messaging.
+     * @param codec               The codec for encoding messages (the same on every server).
+     * @param config              The configuration of the processing of the received messages.
+     */
+    public RedisMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger, @NotNull Serializer serializer,
+                          @NotNull InterceptorManager interceptorManager, @NotNull RedisConnection connection,
+                          @NotNull String channel, @NotNull MessageCodec codec, @NotNull MessengerConfig config) {
+        super(taskManager, logger, serializer, interceptorManager, codec, config);
         this.connection = connection;
         this.channel = channel;
-        this.conversationCallbacks = new HashMap<>();
+        this.channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        this.serverChannelBytes = config.getServerId() == null ? null : serverChannel(config.getServerId());
+        this.outboundBuffer = config.getOutboundBufferCapacity() == 0 ? null
+                : new LinkedBlockingDeque<>(config.getOutboundBufferCapacity());
     }
 
     /**
@@ -69,140 +143,406 @@ public class RedisMessenger implements Messenger {
     @Override
     public void connect() {
         // Redis connection is handled via the RedisConnection class
+        startDispatching();
+
+        MessengerConfig config = getConfig();
+        if (config.getPublishBatchSize() > 1) {
+            // The messages of the batches failing to be sent are buffered like those sent while disconnected
+            publisher = new RedisPublisher(connection, getLogger(), config.getThreadNamePrefix() + "-Publisher",
+                    config.getPublishBatchSize(), config.getPublishLingerMillis(), config.getPublishQueueCapacity(),
+                    outboundBuffer == null ? null : this::requeue);
+        }
+
         subscriber = new Subscriber();
-        taskManager.runTaskAsync(subscriber);
+        getTaskManager().runTaskAsync(subscriber);
     }
 
     @Override
     public void disconnect() {
         // Redis connection is handled via the RedisConnection class
         closing = true;
-        subscriber.unsubscribe();
+        try {
+            if (subscriber != null) {
+                subscriber.close();
+            }
+        } finally {
+            if (publisher != null) {
+                // Sends the queued messages before the connection is closed
+                publisher.close(5000);
+            }
+
+            if (outboundBuffer != null && !outboundBuffer.isEmpty()) {
+                int dropped = outboundBuffer.size();
+                outboundBuffer.clear();
+                droppedOutboundCount.add(dropped);
+                getLogger().warning("Dropped " + dropped + " message(s) waiting for the Redis connection");
+            }
+
+            stopDispatching();
+        }
     }
 
     @Override
-    public void send(@NotNull Message message) {
-        try (Jedis jedis = getJedis()) {
-            jedis.publish(channel, serializer.serialize(message));
+    public void subscribeTopic(@NotNull String topic) {
+        Subscriber subscriber = this.subscriber;
+        if (topics.add(topic) && subscriber != null && connected) {
+            // Otherwise subscribed on (re)connection
+            subscriber.subscribe(topicChannel(topic));
+        }
+    }
+
+    @Override
+    public void subscribeTopicPattern(@NotNull String pattern) {
+        Subscriber subscriber = this.subscriber;
+        if (topicPatterns.putIfAbsent(pattern, compileTopicPattern(pattern)) == null && subscriber != null
+                && connected) {
+            subscriber.psubscribe(topicChannel(pattern));
         }
     }
 
     @Override
-    public void send(@NotNull Conversation conversation) {
-        if (conversation.getType() == Conversation.Type.REQUEST) {
-            conversationCallbacks.put(conversation.getConversationUUID(), conversation.getCallback());
-            try (Jedis jedis = getJedis()) {
-                jedis.publish(channel, serializer.serialize(conversation));
+    public void unsubscribeTopic(@NotNull String topic) {
+        Subscriber subscriber = this.subscriber;
+        if (topics.remove(topic) && subscriber != null && connected) {
+            subscriber.unsubscribe(topicChannel(topic));
+        }
+    }
+
+    /**
+     * Gets the publisher sending the messages in batches.
+     *
+     * @return The publisher, or null if messages are not batched or the messenger is not connected.
+     */
+    @Nullable
+    public RedisPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Checks whether the messenger is connected to Redis and subscribed to its channels.
+     *
+     * @return True if connected, false while connecting or reconnecting.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Gets the number of times the messenger reconnected after losing its connection.
+     *
+     * @return The number of reconnections.
+     */
+    public long getReconnectCount() {
+        return reconnectCount.sum();
+    }
+
+    /**
+     * Gets the number of sent messages waiting for the connection to be published.
+     *
+     * @return The number of buffered messages.
+     */
+    public int getBufferedOutboundMessageCount() {
+        return outboundBuffer == null ? 0 : outboundBuffer.size();
+    }
+
+    /**
+     * Gets the number of sent messages dropped because the outbound buffer was full, or left in it on disconnection.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDroppedOutboundMessageCount() {
+        return droppedOutboundCount.sum();
+    }
+
+    /**
+     * Gets the time elapsed since the last message was received, which tells whether the subscription is alive on a
+     * network where messages are expected regularly.
+     *
+     * @return The age of the last received message in milliseconds, or -1 if no message was received.
+     */
+    public long getLastMessageAgeMillis() {
+        long lastMessageNanos = this.lastMessageNanos;
+        return lastMessageNanos == NO_MESSAGE ? -1
+                : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastMessageNanos);
+    }
+
+    @Override
+    protected void publish(@NotNull byte[] data) {
+        publish(channelBytes, data);
+    }
+
+    @Override
+    protected void publishToServer(@NotNull String serverId, @NotNull byte[] data) {
+        publish(serverChannel(serverId), data);
+    }
+
+    @Override
+    protected void publishToTopic(@NotNull String topic, @NotNull byte[] data) {
+        publish(topicChannel(topic), data);
+    }
+
+    @Override
+    protected boolean isSubscribed(@NotNull String topic) {
+        if (topics.contains(topic)) {
+            return true;
+        }
+
+        for (Pattern pattern : topicPatterns.values()) {
+            if (pattern.matcher(topic).matches()) {
+                return true;
             }
+        }
+
+        return false;
+    }
+
+    private void publish(@NotNull byte[] channel, @NotNull byte[] data) {
+        if (outboundBuffer == null) {
+            publishNow(channel, data);
+            return;
+        }
+
+        // Messages wait behind the buffered ones, so that they are published in the order they were sent
+        if (!connected || !outboundBuffer.isEmpty()) {
+            buffer(channel, data);
+            return;
+        }
+
+        try {
+            publishNow(channel, data);
+        } catch (JedisConnectionException e) {
+            buffer(channel, data);
+        }
+    }
 
-            taskManager.runTaskLaterAsync(() -> {
-                if (!conversationCallbacks.containsKey(conversation.getConversationUUID())) return;
+    private void buffer(@NotNull byte[] channel, @NotNull byte[] data) {
+        append(new Outbound(channel, data));
+        if (connected) {
+            replayBuffer();
+        }
+    }
 
-                ConversationCallback callback = conversationCallbacks.get(conversation.getConversationUUID());
-                conversationCallbacks.remove(conversation.getConversationUUID());
-                callback.onTimeout();
-            }, conversation.getCallback().getTimeout());
-        } else {
-            // This is the response of a previous request
-            try (Jedis jedis = getJedis()) {
-                System.out.println("1");
-                jedis.publish(channel, serializer.serialize(conversation));
-                System.out.println("2");
+    private void requeue(@NotNull byte[] channel, @NotNull byte[] data) {
+        // A batch failed while the subscriber may still look connected: retried after a while rather than right away
+        append(new Outbound(channel, data));
+        scheduleReplay();
+    }
+
+    private void append(@NotNull Outbound outbound) {
+        while (!outboundBuffer.offerLast(outbound)) {
+            // Full: the oldest messages are the least likely to still be relevant
+            if (outboundBuffer.pollFirst() != null) {
+                droppedOutboundCount.increment();
             }
         }
     }
 
-    @Override
-    public void onMessage(@NotNull Message message) {
-        Object object = serializer.deserialize(message.getJson(), message.getClazz());
-        if (object == null) {
-            logger.warning("Received invalid message from Redis: " + message.getJson());
+    private void scheduleReplay() {
+        if (!closing && retryScheduled.compareAndSet(false, true)) {
+            getTaskManager().runTaskLaterAsync(() -> {
+                retryScheduled.set(false);
+                replayBuffer();
+            }, getConfig().getReconnectMinDelayMillis());
+        }
+    }
+
+    private void replayBuffer() {
+        if (closing || !replaying.compareAndSet(false, true)) {
             return;
         }
 
-        interceptorManager.intercept(object);
+        getTaskManager().runTaskAsync(() -> {
+            boolean failed = false;
+            try {
+                Outbound outbound;
+                while (connected && (outbound = outboundBuffer.pollFirst()) != null) {
+                    try {
+                        publishNow(outbound.channel, outbound.message);
+                    } catch (JedisConnectionException e) {
+                        // Put back in front, and sent again once reconnected or after a while
+                        if (!outboundBuffer.offerFirst(outbound)) {
+                            droppedOutboundCount.increment();
+                        }
+
+                        failed = true;
+                        break;
+                    } catch (RuntimeException e) {
+                        droppedOutboundCount.increment();
+                        getLogger().warning("Failed to publish a buffered message to Redis: " + e);
+                    }
+                }
+            } finally {
+                replaying.set(false);
+            }
+
+            if (failed) {
+                scheduleReplay();
+            } else if (connected && !outboundBuffer.isEmpty()) {
+                // Messages buffered after the loop stopped
+                replayBuffer();
+            }
+        });
     }
 
-    @Override
-    public void onMessage(@NotNull Conversation conversation) {
-        Object object = serializer.deserialize(conversation.getJson(), conversation.getClazz());
-        if (object == null) {
-            logger.warning("Received invalid message (Conversation) from Redis: " + conversation.getJson());
+    private void publishNow(@NotNull byte[] channel, @NotNull byte[] data) {
+        RedisPublisher publisher = this.publisher;
+        if (publisher != null) {
+            publisher.publish(channel, data);
             return;
         }
 
-        if (conversation.getType() == Conversation.Type.REQUEST) {
-            interceptorManager.intercept(object, conversation.getConversationUUID());
-        } else {
-            // This is the response of a previous request
-            if (!conversationCallbacks.containsKey(conversation.getConversationUUID())) return;
+        try (Jedis jedis = getJedis()) {
+            jedis.publish(channel, data);
+        }
+    }
+
+    @NotNull
+    private byte[] serverChannel(@NotNull String serverId) {
+        return (channel + ":server:" + serverId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private byte[] topicChannel(@NotNull String topic) {
+        return (channel + ":topic:" + topic).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private String topicOf(@NotNull byte[] topicChannel) {
+        return new String(topicChannel, StandardCharsets.UTF_8).substring(channel.length() + ":topic:".length());
+    }
 
-            ConversationCallback callback = conversationCallbacks.get(conversation.getConversationUUID());
-            conversationCallbacks.remove(conversation.getConversationUUID());
-            callback.onSuccess(object);
+    private boolean isDeliveredByAnotherSubscription(@NotNull String pattern, @NotNull String topic) {
+        if (topics.contains(topic)) {
+            return true;
         }
+
+        for (Map.Entry<String, Pattern> entry : topicPatterns.entrySet()) {
+            if (entry.getKey().compareTo(pattern) < 0 && entry.getValue().matcher(topic).matches()) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
-    private class Subscriber extends JedisPubSub implements Runnable {
+    private class Subscriber extends BinaryJedisPubSub implements Runnable {
+
+        private final ReconnectBackoff backoff = new ReconnectBackoff(getConfig().getReconnectMinDelayMillis(),
+                getConfig().getReconnectMaxDelayMillis());
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private boolean subscribedBefore;
 
         @Override
         public void run() {
-            boolean first = true;
-
+            Logger logger = getLogger();
             while (!closing && !Thread.interrupted() && !connection.getPool().isClosed()) {
                 try (Jedis jedis = connection.getPool().getResource()) {
-                    if (first) {
-                        first = false;
+                    if (serverChannelBytes == null) {
+                        jedis.subscribe(this, channelBytes);
                     } else {
-                        logger.info("Reconnected to Redis");
+                        jedis.subscribe(this, channelBytes, serverChannelBytes);
                     }
-
-                    jedis.subscribe(this, channel);
                 } catch (Exception e) {
+                    connected = false;
                     if (closing) {
                         return;
                     }
 
-                    logger.warning("Lost connection to Redis" + e);
+                    long delay = backoff.nextDelayMillis();
+                    logger.warning("Lost connection to Redis, reconnecting in " + delay + "ms (attempt "
+                            + backoff.getAttempts() + "): " + e);
+                    // Nothing to unsubscribe: the connection is gone, and subscribing again resets the subscriber
                     try {
-                        unsubscribe();
-                    } catch (Exception e2) {
-                        logger.warning("Failed to unsubscribe from Redis" + e2);
-                    }
-
-                    // Sleep for 5 seconds to prevent massive spam in console
-                    try {
-                        Thread.sleep(5000);
+                        // Woken up early by close
+                        closed.await(delay, TimeUnit.MILLISECONDS);
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
                     }
+                }
+            }
+
+            connected = false;
+        }
 
-                    logger.warning("Error while Redis subscribing, trying to reconnect...");
+        private void close() {
+            closed.countDown();
+            // Not subscribed while reconnecting (the pub/sub state outlives a lost connection), in which case the wait
+            // is interrupted by the latch instead
+            if (connected && isSubscribed()) {
+                try {
+                    unsubscribe();
+                } catch (Exception e) {
+                    getLogger().warning("Failed to unsubscribe from Redis: " + e);
                 }
             }
         }
 
         @Override
-        public void onMessage(String channel, String message) {
-            if (channel.equals(RedisMessenger.this.channel)) {
-                Conversation conversation = serializer.deserialize(message, Conversation.class);
-                if (conversation == null) {
-                    logger.warning("Received invalid message (channel: " + channel + "): " + message);
-                    return;
-                }
+        public void onSubscribe(byte[] channel, int subscribedChannels) {
+            // The topics are subscribed once the connection is in subscribe mode, so that no topic added meanwhile is
+            // missed (subscribing twice to a channel is harmless)
+            if (!Arrays.equals(channel, channelBytes)) {
+                return;
+            }
 
-                if (conversation.getType() != null) { // If the message is not a conversation, the conversation type will be null.
-                    RedisMessenger.this.onMessage(conversation);
-                } else {
-                    Message finalMessage = serializer.deserialize(message, Message.class);
-                    if (finalMessage == null) {
-                        logger.warning("Received invalid message from Redis (the message is not a Message object nor Conversation object): " + message);
-                        return;
-                    }
+            if (closing) {
+                // Subscribed while the messenger was being disconnected
+                unsubscribe();
+                return;
+            }
 
-                    RedisMessenger.this.onMessage(finalMessage);
-                }
+            if (subscribedBefore) {
+                reconnectCount.increment();
+                getLogger().info("Reconnected to Redis");
             }
+
+            subscribedBefore = true;
+            backoff.reset();
+            connected = true;
+            if (outboundBuffer != null && !outboundBuffer.isEmpty()) {
+                replayBuffer();
+            }
+
+            if (!topics.isEmpty()) {
+                subscribe(topics.stream().map(RedisMessenger.this::topicChannel).toArray(byte[][]::new));
+            }
+
+            if (!topicPatterns.isEmpty()) {
+                psubscribe(topicPatterns.keySet().stream().map(RedisMessenger.this::topicChannel)
+                        .toArray(byte[][]::new));
+            }
+        }
+
+        @Override
+        public void onPMessage(byte[] pattern, byte[] channel, byte[] message) {
+            // Redis sends a message once per matching subscription: only the first one (the channel itself, then the
+            // patterns in lexicographic order) delivers it
+            if (isDeliveredByAnotherSubscription(topicOf(pattern), topicOf(channel))) {
+                return;
+            }
+
+            onMessage(channel, message);
+        }
+
+        @Override
+        public void onMessage(byte[] channel, byte[] message) {
+            // Only the subscribed channels are received
+            lastMessageNanos = System.nanoTime();
+            submit(message);
+        }
+    }
+
+    /**
+     * Message waiting for the connection to be published.
+     */
+    private static class Outbound {
+
+        private final byte[] channel;
+        private final byte[] message;
+
+        private Outbound(@NotNull byte[] channel, @NotNull byte[] message) {
+            this.channel = channel;
+            this.message = message;
         }
     }
 }
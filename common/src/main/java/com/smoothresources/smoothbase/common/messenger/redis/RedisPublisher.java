@@ -0,0 +1,244 @@
+package com.smoothresources.smoothbase.common.messenger.redis;
+
+import com.smoothresources.smoothbase.common.connection.RedisConnection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Publishes Redis messages in batches from a dedicated thread.
+ * <p>
+ * Published messages are queued and sent by the flusher thread through a pipeline, so a batch costs a single
+ * connection borrow and a single round trip. The flusher sends as soon as a batch is full, or once the first queued
+ * message has waited for the linger time. With no linger, it sends whatever is queued right away, so batches only
+ * grow under load and a lone message is not delayed. The messages of a batch which could not be sent are handed to
+ * the failure handler, if any (e.g. to be sent again once reconnected), and lost otherwise.
+ */
+public class RedisPublisher {
+
+    private final RedisConnection connection;
+    private final Logger logger;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Outbound> queue;
+    private final BiConsumer<byte[], byte[]> failureHandler;
+    private final Thread flusherThread;
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private volatile boolean closing;
+
+    /**
+     * Creates a new RedisPublisher and starts its flusher thread.
+     *
+     * @param connection    The Redis connection.
+     * @param logger        The logger for logging publishing failures.
+     * @param threadName    The name of the flusher thread.
+     * @param batchSize     The maximum number of messages sent in a batch.
+     * @param lingerMillis  The maximum time in milliseconds a message waits for its batch to fill.
+     * @param queueCapacity The maximum number of messages waiting to be sent.
+     */
+    public RedisPublisher(@NotNull RedisConnection connection, @NotNull Logger logger, @NotNull String threadName,
+                          int batchSize, long lingerMillis, int queueCapacity) {
+        this(connection, logger, threadName, batchSize, lingerMillis, queueCapacity, null);
+    }
+
+    /**
+     * Creates a new RedisPublisher and starts its flusher thread.
+     *
+     * @param connection     The Redis connection.
+     * @param logger         The logger for logging publishing failures.
+     * @param threadName     The name of the flusher thread.
+     * @param batchSize      The maximum number of messages sent in a batch.
+     * @param lingerMillis   The maximum time in milliseconds a message waits for its batch to fill.
+     * @param queueCapacity  The maximum number of messages waiting to be sent.
+     * @param failureHandler The handler receiving the channel and the message of each message which could not be
+     *                       sent, or null to lose them.
+     */
+    public RedisPublisher(@NotNull RedisConnection connection, @NotNull Logger logger, @NotNull String threadName,
+                          int batchSize, long lingerMillis, int queueCapacity,
+                          @Nullable BiConsumer<byte[], byte[]> failureHandler) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+
+        this.connection = connection;
+        this.logger = logger;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.failureHandler = failureHandler;
+        this.flusherThread = new Thread(this::runFlusher, threadName);
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    /**
+     * Queues a message to publish.
+     *
+     * @param channel The channel to publish the message to.
+     * @param message The message.
+     * @throws IllegalStateException If the queue is full or the publisher is closed.
+     */
+    public void publish(@NotNull byte[] channel, @NotNull byte[] message) {
+        if (closing) {
+            throw new IllegalStateException("Publisher is closed");
+        }
+
+        if (!queue.offer(new Outbound(channel, message))) {
+            throw new IllegalStateException("Publish queue is full");
+        }
+    }
+
+    /**
+     * Gets the number of messages waiting to be sent.
+     *
+     * @return The number of queued messages.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of messages sent.
+     *
+     * @return The number of published messages.
+     */
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    /**
+     * Gets the number of batches sent. The average batch size is the number of published messages divided by it.
+     *
+     * @return The number of batches.
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * Gets the number of messages whose batch could not be sent (lost, unless handed to the failure handler).
+     *
+     * @return The number of failed messages.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * Stops accepting messages and waits (up to a timeout) for the queued messages to be sent.
+     *
+     * @param timeoutMillis The maximum time in milliseconds to wait.
+     */
+    public void close(long timeoutMillis) {
+        closing = true;
+        flusherThread.interrupt();
+
+        try {
+            flusherThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runFlusher() {
+        List<Outbound> batch = new ArrayList<>(batchSize);
+
+        while (!closing || !queue.isEmpty()) {
+            try {
+                Outbound first = closing ? queue.poll() : queue.take();
+                if (first == null) {
+                    break;
+                }
+
+                batch.add(first);
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                // Woken up by close(): the remaining messages are flushed without waiting
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(@NotNull List<Outbound> batch) throws InterruptedException {
+        queue.drainTo(batch, batchSize - batch.size());
+        if (lingerNanos == 0 || closing) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+
+            Outbound next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void flush(@NotNull List<Outbound> batch) {
+        try (Jedis jedis = connection.getResource()) {
+            if (batch.size() == 1) {
+                jedis.publish(batch.get(0).channel, batch.get(0).message);
+            } else {
+                Pipeline pipeline = jedis.pipelined();
+                for (Outbound outbound : batch) {
+                    pipeline.publish(outbound.channel, outbound.message);
+                }
+
+                pipeline.sync();
+            }
+
+            publishedCount.add(batch.size());
+            batchCount.increment();
+        } catch (RuntimeException e) {
+            failedCount.add(batch.size());
+            logger.warning("Failed to publish " + batch.size() + " message(s) to Redis: " + e);
+            if (failureHandler != null) {
+                for (Outbound outbound : batch) {
+                    failureHandler.accept(outbound.channel, outbound.message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Message waiting to be published.
+     */
+    private static class Outbound {
+
+        private final byte[] channel;
+        private final byte[] message;
+
+        private Outbound(@NotNull byte[] channel, @NotNull byte[] message) {
+            this.channel = channel;
+            this.message = message;
+        }
+    }
+}
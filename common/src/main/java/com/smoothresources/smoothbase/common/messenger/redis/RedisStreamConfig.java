@@ -0,0 +1,161 @@
+package com.smoothresources.smoothbase.common.messenger.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Configuration class for the Redis streams used by a {@link RedisStreamMessenger}.
+ */
+public class RedisStreamConfig {
+
+    private final String group;
+    private final long maxLength;
+    private final int readBatchSize;
+    private final int readBlockMillis;
+
+    /**
+     * Creates a new RedisStreamConfig.
+     *
+     * @param group           The consumer group of this server, or null to use the server identifier.
+     * @param maxLength       The approximate number of messages kept in each stream.
+     * @param readBatchSize   The maximum number of messages read at once.
+     * @param readBlockMillis The maximum time in milliseconds a read waits for messages.
+     */
+    public RedisStreamConfig(@Nullable String group, long maxLength, int readBatchSize, int readBlockMillis) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Max length must be positive");
+        }
+
+        if (readBatchSize <= 0) {
+            throw new IllegalArgumentException("Read batch size must be positive");
+        }
+
+        if (readBlockMillis <= 0) {
+            throw new IllegalArgumentException("Read block time must be positive");
+        }
+
+        this.group = group;
+        this.maxLength = maxLength;
+        this.readBatchSize = readBatchSize;
+        this.readBlockMillis = readBlockMillis;
+    }
+
+    /**
+     * Gets the consumer group of this server.
+     *
+     * @return The consumer group, or null to use the server identifier.
+     */
+    @Nullable
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * Gets the approximate number of messages kept in each stream.
+     *
+     * @return The maximum stream length.
+     */
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Gets the maximum number of messages read at once.
+     *
+     * @return The read batch size.
+     */
+    public int getReadBatchSize() {
+        return readBatchSize;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds a read waits for messages.
+     *
+     * @return The read block time in milliseconds.
+     */
+    public int getReadBlockMillis() {
+        return readBlockMillis;
+    }
+
+    /**
+     * Builder class for creating RedisStreamConfig instances.
+     */
+    public static class Builder {
+
+        private String group;
+        private long maxLength;
+        private int readBatchSize;
+        private int readBlockMillis;
+
+        /**
+         * Creates a new Builder instance.
+         */
+        public Builder() {
+            this.maxLength = 100000;
+            this.readBatchSize = 100;
+            this.readBlockMillis = 2000;
+        }
+
+        /**
+         * Sets the consumer group of this server. Every message is delivered once to each group, so servers must be
+         * in different groups to all receive the messages, and servers sharing a group split them between each
+         * other (e.g. workers of a same service).
+         *
+         * @param group The consumer group, or null to use the server identifier.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setGroup(@Nullable String group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * Sets the approximate number of messages kept in each stream. Older messages are trimmed, even if a group
+         * has not read them yet, so it bounds how long a server can be offline without losing messages.
+         *
+         * @param maxLength The maximum stream length.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setMaxLength(long maxLength) {
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of messages read at once.
+         *
+         * @param readBatchSize The read batch size.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setReadBatchSize(int readBatchSize) {
+            this.readBatchSize = readBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds a read waits for messages. It must be lower than the socket timeout
+         * of the Redis connection (10 seconds), and bounds the delay before acknowledgements are sent.
+         *
+         * @param readBlockMillis The read block time in milliseconds.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setReadBlockMillis(int readBlockMillis) {
+            this.readBlockMillis = readBlockMillis;
+            return this;
+        }
+
+        /**
+         * Builds and returns a RedisStreamConfig instance with the current configuration.
+         *
+         * @return The created RedisStreamConfig instance.
+         */
+        @NotNull
+        public RedisStreamConfig build() {
+            return new RedisStreamConfig(group, maxLength, readBatchSize, readBlockMillis);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.smoothresources.smoothbase.common.messenger.redis;
+
+import com.smoothresources.smoothbase.common.connection.RedisConnection;
+import com.smoothresources.smoothbase.common.messenger.AbstractMessenger;
+import com.smoothresources.smoothbase.common.messenger.MessengerConfig;
+import com.smoothresources.smoothbase.common.messenger.codec.JsonEnvelopeCodec;
+import com.smoothresources.smoothbase.common.messenger.codec.MessageCodec;
+import com.smoothresources.smoothbase.common.messenger.interceptor.InterceptorManager;
+import com.smoothresources.smoothbase.common.serializer.Serializer;
+import com.smoothresources.smoothbase.common.task.TaskManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XReadGroupParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of Messenger using Redis streams, for the messages which must not be lost.
+ * <p>
+ * Messages are appended to streams (XADD) trimmed to an approximate maximum length, and read in blocking batches by
+ * a consumer group (XREADGROUP). A message is acknowledged (XACK) once it has been handled, so the messages sent while
+ * a server is disconnected or restarting are read when it comes back, and the messages it read but did not handle
+ * before stopping are read again: delivery is at least once, so handlers must tolerate duplicates. Instead of dropping
+ * messages when the dispatch threads are overloaded, reading slows down while the messages wait in the streams.
+ * Failed reads are retried after a jittered, exponentially growing delay (see
+ * {@link MessengerConfig.Builder#setReconnectDelays(long, long)}).
+ * <p>
+ * The streams are named like the channels of a {@link RedisMessenger}: {@code <stream>} for every server,
+ * {@code <stream>:server:<id>} for a single server and {@code <stream>:topic:<topic>} for a topic. Every server must
+ * have an identifier (see {@link MessengerConfig.Builder#setServerId(String)}), which names its consumer, and by
+ * default its consumer group (see {@link RedisStreamConfig.Builder#setGroup(String)}). Topic patterns are not
+ * supported, as a stream is read by its name: this is not a
+ * {@link com.smoothresources.smoothbase.common.messenger.TopicPatternMessenger}.
+ */
+public class RedisStreamMessenger extends AbstractMessenger {
+
+    private static final byte[] DATA_FIELD = "d".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEW_MESSAGES = ">".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PENDING_MESSAGES = "0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LAST_MESSAGE = "$".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnection connection;
+    private final String stream;
+    private final String serverStream;
+    private final RedisStreamConfig streamConfig;
+    private final byte[] groupBytes;
+    private final byte[] consumerBytes;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Acknowledgement> acknowledgements = new ConcurrentLinkedQueue<>();
+    private final LongAdder acknowledgedCount = new LongAdder();
+    private final LongAdder reconnectCount = new LongAdder();
+
+    private volatile boolean closing;
+    private volatile boolean connected;
+
+    /**
+     * Creates a new RedisStreamMessenger with JSON envelopes and the default stream configuration.
+     *
+     * @param taskManager        The task manager for running asynchronous tasks.
+     * @param logger             The logger for logging messages.
+     * @param serializer         The serializer for serializing messages.
+     * @param interceptorManager The manager for handling interceptors.
+     * @param connection         The Redis connection.
+     * @param stream             The Redis stream for messaging.
+     * @param config             The configuration of the processing of the messages, with the server identifier.
+     */
+    public RedisStreamMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger,
+                                @NotNull Serializer serializer, @NotNull InterceptorManager interceptorManager,
+                                @NotNull RedisConnection connection, @NotNull String stream,
+                                @NotNull MessengerConfig config) {
+        this(taskManager, logger, serializer, interceptorManager, connection, stream, new JsonEnvelopeCodec(serializer),
+                config, new RedisStreamConfig.Builder().build());
+    }
+
+    /**
+     * Creates a new RedisStreamMessenger.
+     *
+     * @param taskManager        The task manager for running asynchronous tasks.
+     * @param logger             The logger for logging messages.
+     * @param serializer         The serializer for serializing messages.
+     * @param interceptorManager The manager for handling interceptors.
+     * @param connection         The Redis connection.
+     * @param stream             The Redis stream for messaging.
+     * @param codec              The codec for encoding messages (the same on every server).
+     * @param config             The configuration of the processing of the messages, with the server identifier.
+     * @param streamConfig       The configuration of the streams.
+     * @throws IllegalArgumentException If the configuration has no server identifier.
+     */
+    public RedisStreamMessenger(@NotNull TaskManager taskManager, @NotNull Logger logger,
+                                @NotNull Serializer serializer, @NotNull InterceptorManager interceptorManager,
+                                @NotNull RedisConnection connection, @NotNull String stream,
+                                @NotNull MessageCodec codec, @NotNull MessengerConfig config,
+                                @NotNull RedisStreamConfig streamConfig) {
+        super(taskManager, logger, serializer, interceptorManager, codec, config);
+        String serverId = config.getServerId();
+        if (serverId == null) {
+            throw new IllegalArgumentException("A server identifier is required to consume Redis streams");
+        }
+
+        this.connection = connection;
+        this.stream = stream;
+        this.serverStream = stream + ":server:" + serverId;
+        this.streamConfig = streamConfig;
+        String group = streamConfig.getGroup();
+        this.groupBytes = (group == null ? serverId : group).getBytes(StandardCharsets.UTF_8);
+        this.consumerBytes = serverId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void connect() {
+        // Redis connection is handled via the RedisConnection class
+        startDispatching();
+        getTaskManager().runTaskAsync(new Reader());
+    }
+
+    @Override
+    public void disconnect() {
+        // Redis connection is handled via the RedisConnection class
+        closing = true;
+        stopDispatching();
+
+        // The messages handled since the last read are acknowledged right away, as the reader may be blocked
+        try (Jedis jedis = connection.getResource()) {
+            acknowledge(jedis);
+        } catch (Exception e) {
+            getLogger().warning("Failed to acknowledge the handled Redis stream messages: " + e);
+        }
+    }
+
+    @Override
+    public void subscribeTopic(@NotNull String topic) {
+        // Read from the next batch
+        topics.add(topic);
+    }
+
+    @Override
+    public void unsubscribeTopic(@NotNull String topic) {
+        topics.remove(topic);
+    }
+
+    /**
+     * Checks whether the messenger is reading the streams.
+     *
+     * @return True if the last read succeeded, false while connecting or reconnecting.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Gets the number of times the messenger reconnected after failing to read the streams.
+     *
+     * @return The number of reconnections.
+     */
+    public long getReconnectCount() {
+        return reconnectCount.sum();
+    }
+
+    /**
+     * Gets the number of messages acknowledged after being handled.
+     *
+     * @return The number of acknowledged messages.
+     */
+    public long getAcknowledgedCount() {
+        return acknowledgedCount.sum();
+    }
+
+    /**
+     * Gets the number of handled messages waiting to be acknowledged.
+     *
+     * @return The number of pending acknowledgements.
+     */
+    public int getPendingAcknowledgementCount() {
+        return acknowledgements.size();
+    }
+
+    @Override
+    protected void publish(@NotNull byte[] data) {
+        append(stream, data);
+    }
+
+    @Override
+    protected void publishToServer(@NotNull String serverId, @NotNull byte[] data) {
+        append(stream + ":server:" + serverId, data);
+    }
+
+    @Override
+    protected void publishToTopic(@NotNull String topic, @NotNull byte[] data) {
+        append(stream + ":topic:" + topic, data);
+    }
+
+    @Override
+    protected boolean isSubscribed(@NotNull String topic) {
+        return topics.contains(topic);
+    }
+
+    private void append(@NotNull String key, @NotNull byte[] data) {
+        try (Jedis jedis = connection.getResource()) {
+            jedis.xadd(key.getBytes(StandardCharsets.UTF_8),
+                    XAddParams.xAddParams().maxLen(streamConfig.getMaxLength()).approximateTrimming(),
+                    Map.of(DATA_FIELD, data));
+        }
+    }
+
+    private void acknowledge(@NotNull Jedis jedis) {
+        Map<String, List<byte[]>> idsByStream = new HashMap<>();
+        Acknowledgement acknowledgement;
+        while ((acknowledgement = acknowledgements.poll()) != null) {
+            idsByStream.computeIfAbsent(acknowledgement.stream, key -> new ArrayList<>()).add(acknowledgement.id);
+        }
+
+        for (Map.Entry<String, List<byte[]>> entry : idsByStream.entrySet()) {
+            jedis.xack(entry.getKey().getBytes(StandardCharsets.UTF_8), groupBytes,
+                    entry.getValue().toArray(new byte[0][]));
+            acknowledgedCount.add(entry.getValue().size());
+        }
+    }
+
+    /**
+     * Message handled and waiting to be acknowledged.
+     */
+    private static class Acknowledgement {
+
+        private final String stream;
+        private final byte[] id;
+
+        private Acknowledgement(@NotNull String stream, @NotNull byte[] id) {
+            this.stream = stream;
+            this.id = id;
+        }
+    }
+
+    private class Reader implements Runnable {
+
+        // The position of each stream: the pending messages of this consumer first, then the new messages
+        private final Map<String, byte[]> positions = new HashMap<>();
+        private final Set<String> groups = new HashSet<>();
+
+        private final ReconnectBackoff backoff = new ReconnectBackoff(getConfig().getReconnectMinDelayMillis(),
+                getConfig().getReconnectMaxDelayMillis());
+
+        @Override
+        public void run() {
+            Logger logger = getLogger();
+            try {
+                while (!closing && !Thread.interrupted()) {
+                    try (Jedis jedis = connection.getResource()) {
+                        acknowledge(jedis);
+                        read(jedis);
+                        if (backoff.getAttempts() > 0) {
+                            reconnectCount.increment();
+                            logger.info("Reconnected to Redis streams");
+                            backoff.reset();
+                        }
+
+                        connected = true;
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        connected = false;
+                        if (closing) {
+                            return;
+                        }
+
+                        // The groups are checked again, in case the streams were deleted
+                        groups.clear();
+                        long delay = backoff.nextDelayMillis();
+                        logger.warning("Error while reading Redis streams, retrying in " + delay + "ms (attempt "
+                                + backoff.getAttempts() + "): " + e);
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                }
+            } finally {
+                connected = false;
+            }
+        }
+
+        private void read(@NotNull Jedis jedis) throws InterruptedException {
+            Map<String, byte[]> streams = new LinkedHashMap<>();
+            streams.put(stream, null);
+            streams.put(serverStream, null);
+            for (String topic : topics) {
+                streams.put(stream + ":topic:" + topic, null);
+            }
+
+            positions.keySet().retainAll(streams.keySet());
+            List<Map.Entry<byte[], byte[]>> offsets = new ArrayList<>(streams.size());
+            for (String key : streams.keySet()) {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                if (groups.add(key)) {
+                    createGroup(jedis, keyBytes);
+                }
+
+                offsets.add(Map.entry(keyBytes, positions.getOrDefault(key, PENDING_MESSAGES)));
+            }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Map.Entry<byte[], byte[]>[] offsetArray = offsets.toArray(Map.Entry[]::new);
+            List<Object> response = jedis.xreadGroup(groupBytes, consumerBytes, XReadGroupParams.xReadGroupParams()
+                    .count(streamConfig.getReadBatchSize()).block(streamConfig.getReadBlockMillis()), offsetArray);
+            if (response == null) {
+                // Nothing to read before the block time
+                return;
+            }
+
+            for (Object streamResponse : response) {
+                List<?> streamEntries = (List<?>) streamResponse;
+                String key = new String((byte[]) streamEntries.get(0), StandardCharsets.UTF_8);
+                List<?> entries = (List<?>) streamEntries.get(1);
+                if (entries.isEmpty()) {
+                    // No more pending messages for this consumer
+                    positions.put(key, NEW_MESSAGES);
+                    continue;
+                }
+
+                for (Object entryResponse : entries) {
+                    List<?> entry = (List<?>) entryResponse;
+                    byte[] id = (byte[]) entry.get(0);
+                    if (positions.get(key) != NEW_MESSAGES) {
+                        // Reading the pending messages: the next read starts after this one
+                        positions.put(key, id);
+                    }
+
+                    byte[] data = dataOf((List<?>) entry.get(1));
+                    Acknowledgement acknowledgement = new Acknowledgement(key, id);
+                    if (data == null) {
+                        // Trimmed from the stream since it was read, or not sent by a messenger
+                        acknowledgements.add(acknowledgement);
+                        continue;
+                    }
+
+                    submitAndWait(data, () -> acknowledgements.add(acknowledgement));
+                }
+            }
+        }
+
+        private void createGroup(@NotNull Jedis jedis, @NotNull byte[] key) {
+            try {
+                // A new group only reads the messages sent from now on
+                jedis.xgroupCreate(key, groupBytes, LAST_MESSAGE, true);
+            } catch (JedisDataException e) {
+                if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) {
+                    throw e;
+                }
+            }
+        }
+
+        @Nullable
+        private byte[] dataOf(@Nullable List<?> fields) {
+            if (fields == null) {
+                return null;
+            }
+
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                if (Arrays.equals((byte[]) fields.get(i), DATA_FIELD)) {
+                    return (byte[]) fields.get(i + 1);
+                }
+            }
+
+            return null;
+        }
+    }
+}
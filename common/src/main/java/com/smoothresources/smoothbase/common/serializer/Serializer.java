@@ -2,6 +2,7 @@ package com.smoothresources.smoothbase.common.serializer;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 import net.kyori.adventure.text.Component;
 import com.smoothresources.smoothbase.common.serializer.adapter.ClassAdapter;
 import com.smoothresources.smoothbase.common.serializer.adapter.ComponentAdapter;
@@ -55,6 +56,19 @@ public class Serializer {
         return gson.fromJson(json, classOfT);
     }
 
+    /**
+     * Deserializes a JSON tree to an object of the specified class.
+     *
+     * @param json      The JSON tree to deserialize.
+     * @param classOfT  The class of the object to deserialize.
+     * @param <T>       The type of the object to deserialize.
+     * @return The deserialized object, or null if the JSON tree is null or a JSON null.
+     */
+    @Nullable
+    public <T> T deserialize(@Nullable JsonElement json, @NotNull Class<T> classOfT) {
+        return gson.fromJson(json, classOfT);
+    }
+
     /**
      * Builder class for creating Serializer instances with custom configurations.
      */
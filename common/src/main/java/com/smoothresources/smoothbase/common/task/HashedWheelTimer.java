@@ -0,0 +1,418 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timer scheduling delayed and repeating actions on a hashed wheel driven by a single thread.
+ * <p>
+ * Scheduling and cancelling are O(1): new and cancelled timeouts are handed to the timer thread through lock-free
+ * queues and linked into (or unlinked from) the bucket of the wheel they expire in. A pending timeout costs a single
+ * small object instead of a sleeping thread. Actions run on the timer thread, so they must only hand the real work
+ * off to another executor.
+ */
+public class HashedWheelTimer {
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_SHUTDOWN = 2;
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread workerThread;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+    private final AtomicLong pendingCount = new AtomicLong(0);
+    private volatile long startTime;
+    private long tick;
+
+    /**
+     * Creates a new HashedWheelTimer.
+     *
+     * @param threadName The name of the timer thread.
+     * @param tickMillis The duration in milliseconds of a tick (the precision of the timer).
+     * @param wheelSize  The number of buckets in the wheel (rounded up to a power of two).
+     */
+    public HashedWheelTimer(@NotNull String threadName, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^30");
+        }
+
+        int normalizedSize = 1;
+        while (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[normalizedSize];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        this.mask = wheel.length - 1;
+        this.workerThread = new Thread(this::runWorker, threadName);
+        this.workerThread.setDaemon(true);
+    }
+
+    /**
+     * Schedules an action to run once after a delay.
+     *
+     * @param action The action to run (on the timer thread).
+     * @param delay  The delay in milliseconds before running the action.
+     * @return The scheduled timeout.
+     */
+    @NotNull
+    public Timeout schedule(@NotNull Runnable action, long delay) {
+        return schedule(action, delay, 0, 0);
+    }
+
+    /**
+     * Schedules an action to run repeatedly at a fixed rate.
+     *
+     * @param action       The action to run (on the timer thread).
+     * @param initialDelay The initial delay in milliseconds before running the action.
+     * @param period       The period in milliseconds between successive executions.
+     * @param times        The number of times to run the action, or 0 to run it until cancelled.
+     * @return The scheduled timeout.
+     */
+    @NotNull
+    public Timeout schedule(@NotNull Runnable action, long initialDelay, long period, int times) {
+        if (period < 0 || times < 0) {
+            throw new IllegalArgumentException("Period and times must not be negative");
+        }
+
+        start();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, initialDelay)) - startTime;
+        Timeout timeout = new Timeout(action, deadline, TimeUnit.MILLISECONDS.toNanos(period), times);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Gets the number of timeouts waiting to expire.
+     *
+     * @return The number of pending timeouts.
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Checks if the current thread is the timer thread, which runs the actions of the expired timeouts.
+     *
+     * @return True if called from the timer thread, false otherwise.
+     */
+    public boolean isTimerThread() {
+        return Thread.currentThread() == workerThread;
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts are cancelled without running, and their actions are returned so that
+     * the caller can release what waits for them.
+     *
+     * @return The actions of the timeouts which were still pending.
+     */
+    @NotNull
+    public List<Runnable> stop() {
+        if (state.getAndSet(STATE_SHUTDOWN) != STATE_STARTED) {
+            // Never started (so nothing was scheduled), or already stopped
+            return List.of();
+        }
+
+        workerThread.interrupt();
+        if (!isTimerThread()) {
+            // The wheel is only accessed by the timer thread until it has exited
+            boolean interrupted = false;
+            while (workerThread.isAlive()) {
+                try {
+                    workerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<Runnable> unprocessed = new ArrayList<>();
+        for (Bucket bucket : wheel) {
+            for (Timeout timeout = bucket.head; timeout != null; timeout = timeout.next) {
+                timeout.cancelUnprocessed(unprocessed);
+            }
+        }
+
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            timeout.cancelUnprocessed(unprocessed);
+        }
+
+        return unprocessed;
+    }
+
+    private void start() {
+        switch (state.get()) {
+            case STATE_INIT:
+                if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+                    long now = System.nanoTime();
+                    // 0 is used to detect an uninitialized start time
+                    startTime = now == 0 ? 1 : now;
+                    workerThread.start();
+                }
+                break;
+            case STATE_STARTED:
+                break;
+            default:
+                throw new IllegalStateException("Cannot schedule a task after the timer has been stopped");
+        }
+
+        while (startTime == 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void runWorker() {
+        while (state.get() == STATE_STARTED) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+
+            processCancelledTimeouts();
+            transferPendingTimeouts();
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+
+        while (true) {
+            long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startTime) + 999999);
+            if (sleepMillis <= 0) {
+                return deadline;
+            }
+
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (state.get() == STATE_SHUTDOWN) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            Bucket bucket = timeout.bucket;
+            if (bucket != null) {
+                bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+
+            if (timeout.state != Timeout.STATE_PENDING) {
+                continue;
+            }
+
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Handle of an action scheduled on the timer.
+     */
+    public final class Timeout {
+
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private volatile Runnable action;
+        private volatile int state;
+        private final long period;
+        private long deadline;
+        private long remainingRounds;
+        private int remainingTimes;
+
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        private Timeout(@NotNull Runnable action, long deadline, long period, int times) {
+            this.action = action;
+            this.deadline = deadline;
+            this.period = period;
+            this.remainingTimes = period > 0 ? times : 1;
+        }
+
+        /**
+         * Cancels the timeout. The action will not run anymore and its slot in the wheel is released.
+         *
+         * @return True if the timeout was cancelled, false if it had already expired or been cancelled.
+         */
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+
+            action = null;
+            pendingCount.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        /**
+         * Checks if the timeout has been cancelled.
+         *
+         * @return True if the timeout has been cancelled, false otherwise.
+         */
+        public boolean isCancelled() {
+            return state == STATE_CANCELLED;
+        }
+
+        /**
+         * Checks if the timeout has expired (its last execution has run).
+         *
+         * @return True if the timeout has expired, false otherwise.
+         */
+        public boolean isExpired() {
+            return state == STATE_EXPIRED;
+        }
+
+        private void cancelUnprocessed(@NotNull List<Runnable> unprocessed) {
+            Runnable action = this.action;
+            if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_CANCELLED)) {
+                return;
+            }
+
+            this.action = null;
+            pendingCount.decrementAndGet();
+            unprocessed.add(action);
+        }
+
+        private void expire() {
+            Runnable action = this.action;
+            boolean last = period == 0 || (remainingTimes > 0 && --remainingTimes == 0);
+
+            if (last) {
+                if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_EXPIRED)) {
+                    return;
+                }
+
+                this.action = null;
+                pendingCount.decrementAndGet();
+            }
+
+            if (action != null) {
+                try {
+                    action.run();
+                } catch (Throwable throwable) {
+                    workerThread.getUncaughtExceptionHandler().uncaughtException(workerThread, throwable);
+                }
+            }
+
+            if (!last && state == STATE_PENDING) {
+                deadline += period;
+                pendingTimeouts.add(this);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts placed in a slot of the wheel. Only accessed by the timer thread.
+     */
+    private final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(@NotNull Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+        private void remove(@NotNull Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                head = next;
+            }
+
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.smoothresources.smoothbase.common.task;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two buckets in microseconds.
+ * <p>
+ * Bucket 0 counts the durations below 1µs and bucket {@code i} those between 2^(i-1) and 2^i µs, the last bucket
+ * counting everything above (about 17 minutes). Recording is a single atomic increment, and percentiles are
+ * reported as the upper bound of the bucket containing them.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Gets the number of buckets.
+     *
+     * @return The number of buckets.
+     */
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * Gets the number of durations recorded in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The number of durations recorded in the bucket.
+     */
+    public long getCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Gets the exclusive upper bound of a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The upper bound in microseconds, or {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public long getUpperBoundMicros(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Gets the total number of recorded durations.
+     *
+     * @return The number of recorded durations.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+
+        return total;
+    }
+
+    /**
+     * Gets an approximation of a percentile of the recorded durations.
+     *
+     * @param percentile The percentile, between 0 and 100 (e.g. 99 for the 99th percentile).
+     * @return The upper bound in microseconds of the bucket containing the percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getUpperBoundMicros(i);
+            }
+        }
+
+        return getUpperBoundMicros(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Clears the recorded durations.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Task carrying the name under which its executions are recorded by {@link TaskMetrics}. Tasks without a name are
+ * recorded under the name of their class.
+ */
+public class NamedTask implements Runnable {
+
+    private final String name;
+    private final Runnable task;
+
+    /**
+     * Creates a new NamedTask.
+     *
+     * @param name The name of the task.
+     * @param task The task to run.
+     */
+    public NamedTask(@NotNull String name, @NotNull Runnable task) {
+        this.name = name;
+        this.task = task;
+    }
+
+    /**
+     * Creates a new NamedTask.
+     *
+     * @param name The name of the task (e.g. "scoreboard-refresh").
+     * @param task The task to run.
+     * @return The named task.
+     */
+    @NotNull
+    public static NamedTask of(@NotNull String name, @NotNull Runnable task) {
+        return new NamedTask(name, task);
+    }
+
+    @Override
+    public void run() {
+        task.run();
+    }
+
+    /**
+     * Gets the name of the task.
+     *
+     * @return The name of the task.
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
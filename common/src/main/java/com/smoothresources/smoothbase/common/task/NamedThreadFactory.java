@@ -0,0 +1,31 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory creating daemon threads named after a common prefix and a sequence number.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    /**
+     * Creates a new NamedThreadFactory.
+     *
+     * @param prefix The prefix for the thread names (e.g. "SmoothBase-Async" creates "SmoothBase-Async-1").
+     */
+    public NamedThreadFactory(@NotNull String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(@NotNull Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,105 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Consumer;
+
+/**
+ * Represents a task submitted to a {@link TaskManager}.
+ */
+public interface ScheduledTask {
+
+    /**
+     * Cancels the task. Pending executions will not run and, for delayed or repeating tasks, the timer entry is
+     * released immediately. An execution already in progress is not interrupted.
+     *
+     * @return True if the task was cancelled, false if it was already done.
+     */
+    boolean cancel();
+
+    /**
+     * Checks if the task has been cancelled.
+     *
+     * @return True if the task has been cancelled, false otherwise.
+     */
+    boolean isCancelled();
+
+    /**
+     * Checks if the task is done (completed, failed or cancelled).
+     *
+     * @return True if the task is done, false otherwise.
+     */
+    boolean isDone();
+
+    /**
+     * Gets the current state of the task.
+     *
+     * @return The state of the task.
+     */
+    @NotNull
+    State getState();
+
+    /**
+     * Gets the exception thrown by the last failed execution of the task. A repeating task keeps running after a
+     * failed execution, so it may have a failure while still scheduled.
+     *
+     * @return The exception, or null if no execution has failed.
+     */
+    @Nullable
+    Throwable getFailure();
+
+    /**
+     * Gets the number of executions skipped because the previous execution was still running. Skipped executions
+     * count against the number of times of a repeating task, which can thus run fewer times than requested.
+     *
+     * @return The number of skipped executions.
+     */
+    int getSkippedCount();
+
+    /**
+     * Registers a callback called once the task is done. If the task is already done, the callback is called
+     * immediately on the calling thread; otherwise it is called on the thread finishing (or cancelling) the task.
+     *
+     * @param callback The callback receiving this task.
+     * @return This task.
+     */
+    @NotNull
+    ScheduledTask onComplete(@NotNull Consumer<ScheduledTask> callback);
+
+    /**
+     * Enum representing the state of a task.
+     */
+    enum State {
+        /**
+         * The task is waiting for its next execution.
+         */
+        SCHEDULED,
+        /**
+         * The task is being executed.
+         */
+        RUNNING,
+        /**
+         * The task has run its last execution.
+         */
+        COMPLETED,
+        /**
+         * The last execution of the task threw an exception (the failures of the other executions of a repeating task
+         * do not stop it, see {@link ScheduledTask#getFailure()}).
+         */
+        FAILED,
+        /**
+         * The task has been cancelled.
+         */
+        CANCELLED;
+
+        /**
+         * Checks if the state is terminal.
+         *
+         * @return True if the state is terminal, false otherwise.
+         */
+        public boolean isDone() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+}
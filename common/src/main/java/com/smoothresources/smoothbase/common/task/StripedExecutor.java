@@ -0,0 +1,162 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor running tasks on a fixed set of single-threaded stripes, each with its own bounded queue.
+ * <p>
+ * Tasks submitted with the same key always run on the same stripe, so they run one at a time and in submission
+ * order, while tasks with different keys are spread over the stripes and run in parallel. A task submitted to a full
+ * stripe is rejected instead of blocking the submitter, so that a slow consumer cannot stall the thread producing
+ * the tasks (e.g. a socket reader).
+ */
+public class StripedExecutor {
+
+    private final Stripe[] stripes;
+    private final LongAdder rejectedCount = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new StripedExecutor and starts its threads.
+     *
+     * @param threadNamePrefix The prefix for the thread names.
+     * @param stripeCount      The number of stripes (and threads).
+     * @param queueCapacity    The maximum number of tasks waiting on each stripe.
+     */
+    public StripedExecutor(@NotNull String threadNamePrefix, int stripeCount, int queueCapacity) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+
+        NamedThreadFactory threadFactory = new NamedThreadFactory(threadNamePrefix);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(queueCapacity);
+            stripes[i].thread = threadFactory.newThread(stripes[i]);
+            stripes[i].thread.start();
+        }
+    }
+
+    /**
+     * Submits a task to the stripe of a key.
+     *
+     * @param key  The key selecting the stripe (e.g. the hash of the message type).
+     * @param task The task to run.
+     * @return True if the task was queued, false if the stripe was full or the executor is shut down.
+     */
+    public boolean execute(int key, @NotNull Runnable task) {
+        if (!running || !stripes[Math.floorMod(key ^ (key >>> 16), stripes.length)].queue.offer(task)) {
+            rejectedCount.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Submits a task to the stripe of a key, waiting for room in its queue if it is full. Unlike
+     * {@link #execute(int, Runnable)}, this slows the submitter down to the pace of the stripe, for submitters which
+     * can afford to wait (e.g. a reader of a persistent queue).
+     *
+     * @param key  The key selecting the stripe.
+     * @param task The task to run.
+     * @return True if the task was queued, false if the executor is shut down.
+     * @throws InterruptedException If the submitter was interrupted while waiting.
+     */
+    public boolean executeBlocking(int key, @NotNull Runnable task) throws InterruptedException {
+        BlockingQueue<Runnable> queue = stripes[Math.floorMod(key ^ (key >>> 16), stripes.length)].queue;
+        while (running) {
+            // Polls the running flag, as the queue is no longer consumed once the executor is shut down
+            if (queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the number of stripes.
+     *
+     * @return The number of stripes.
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Gets the number of tasks waiting on every stripe.
+     *
+     * @return The number of queued tasks.
+     */
+    public int getQueuedCount() {
+        int queued = 0;
+        for (Stripe stripe : stripes) {
+            queued += stripe.queue.size();
+        }
+
+        return queued;
+    }
+
+    /**
+     * Gets the number of tasks rejected because their stripe was full.
+     *
+     * @return The number of rejected tasks.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Stops the threads. The running tasks are interrupted and the queued tasks are dropped.
+     */
+    public void shutdown() {
+        running = false;
+        for (Stripe stripe : stripes) {
+            stripe.thread.interrupt();
+        }
+    }
+
+    /**
+     * Single-threaded lane of the executor.
+     */
+    private class Stripe implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+        private Thread thread;
+
+        private Stripe(int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, throwable);
+                }
+            }
+
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Configuration class for the worker pool used by a {@link TaskManager}.
+ */
+public class TaskExecutorConfig {
+
+    private final int corePoolSize;
+    private final int maxPoolSize;
+    private final int queueCapacity;
+    private final long keepAliveMillis;
+    private final long shutdownTimeoutMillis;
+    private final long timerTickMillis;
+    private final int timerWheelSize;
+    private final String threadNamePrefix;
+    private final RejectionPolicy rejectionPolicy;
+    private final ExecutionMode executionMode;
+
+    /**
+     * Creates a new TaskExecutorConfig.
+     *
+     * @param corePoolSize          The number of worker threads kept alive even when idle.
+     * @param maxPoolSize           The maximum number of worker threads.
+     * @param queueCapacity         The maximum number of tasks waiting for a worker.
+     * @param keepAliveMillis       The time in milliseconds an idle non-core worker is kept alive.
+     * @param shutdownTimeoutMillis The time in milliseconds to wait for running tasks on shutdown.
+     * @param timerTickMillis       The duration in milliseconds of a tick of the delayed task timer.
+     * @param timerWheelSize        The number of buckets of the delayed task timer.
+     * @param threadNamePrefix      The prefix for the worker thread names.
+     * @param rejectionPolicy       The policy applied when both the pool and the queue are full.
+     * @param executionMode         The kind of threads running the asynchronous tasks.
+     */
+    public TaskExecutorConfig(int corePoolSize, int maxPoolSize, int queueCapacity, long keepAliveMillis,
+                              long shutdownTimeoutMillis, long timerTickMillis, int timerWheelSize,
+                              @NotNull String threadNamePrefix, @NotNull RejectionPolicy rejectionPolicy,
+                              @NotNull ExecutionMode executionMode) {
+        if (corePoolSize < 0 || maxPoolSize <= 0 || maxPoolSize < corePoolSize) {
+            throw new IllegalArgumentException("Invalid pool size (core: " + corePoolSize + ", max: " + maxPoolSize + ")");
+        }
+
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+
+        this.corePoolSize = corePoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.queueCapacity = queueCapacity;
+        this.keepAliveMillis = keepAliveMillis;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.timerTickMillis = timerTickMillis;
+        this.timerWheelSize = timerWheelSize;
+        this.threadNamePrefix = threadNamePrefix;
+        this.rejectionPolicy = rejectionPolicy;
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Gets the number of worker threads kept alive even when idle.
+     *
+     * @return The core pool size.
+     */
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    /**
+     * Gets the maximum number of worker threads.
+     *
+     * @return The maximum pool size.
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Gets the maximum number of tasks waiting for a worker.
+     *
+     * @return The queue capacity.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the time in milliseconds an idle non-core worker is kept alive.
+     *
+     * @return The keep alive time in milliseconds.
+     */
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * Gets the time in milliseconds to wait for running tasks on shutdown.
+     *
+     * @return The shutdown timeout in milliseconds.
+     */
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    /**
+     * Gets the duration in milliseconds of a tick of the delayed task timer.
+     *
+     * @return The timer tick duration in milliseconds.
+     */
+    public long getTimerTickMillis() {
+        return timerTickMillis;
+    }
+
+    /**
+     * Gets the number of buckets of the delayed task timer.
+     *
+     * @return The timer wheel size.
+     */
+    public int getTimerWheelSize() {
+        return timerWheelSize;
+    }
+
+    /**
+     * Gets the prefix for the worker thread names.
+     *
+     * @return The thread name prefix.
+     */
+    @NotNull
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    /**
+     * Gets the policy applied when both the pool and the queue are full.
+     *
+     * @return The rejection policy.
+     */
+    @NotNull
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Gets the kind of threads running the asynchronous tasks.
+     *
+     * @return The execution mode.
+     */
+    @NotNull
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Enum representing the kind of threads running the asynchronous tasks.
+     */
+    public enum ExecutionMode {
+        /**
+         * Tasks run on the bounded pool of platform threads.
+         */
+        POOLED,
+        /**
+         * Tasks run on a new virtual thread each (Java 21+), which suits tasks blocking on I/O (database queries,
+         * HTTP requests...). The pool settings are ignored. Falls back to {@link #POOLED} on older JVMs.
+         */
+        VIRTUAL
+    }
+
+    /**
+     * Enum representing what happens to a task submitted while the pool and the queue are full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * The task runs on the thread that submitted it. The executions of delayed and repeating tasks, submitted by
+         * the timer thread, fail instead, as running them there would delay every other timer.
+         */
+        CALLER_RUNS,
+        /**
+         * A {@link java.util.concurrent.RejectedExecutionException} is thrown to the submitter.
+         */
+        ABORT,
+        /**
+         * The task is silently dropped (and cancelled, if it was submitted by the task manager).
+         */
+        DISCARD,
+        /**
+         * The oldest queued task is dropped (and cancelled, if it was submitted by the task manager) and the
+         * submission is retried.
+         */
+        DISCARD_OLDEST
+    }
+
+    /**
+     * Builder class for creating TaskExecutorConfig instances.
+     */
+    public static class Builder {
+
+        private int corePoolSize;
+        private int maxPoolSize;
+        private int queueCapacity;
+        private long keepAliveMillis;
+        private long shutdownTimeoutMillis;
+        private long timerTickMillis;
+        private int timerWheelSize;
+        private String threadNamePrefix;
+        private RejectionPolicy rejectionPolicy;
+        private ExecutionMode executionMode;
+
+        /**
+         * Creates a new Builder instance.
+         */
+        public Builder() {
+            int processors = Runtime.getRuntime().availableProcessors();
+            this.corePoolSize = Math.max(4, processors);
+            this.maxPoolSize = Math.max(16, processors * 4);
+            this.queueCapacity = 10000;
+            this.keepAliveMillis = 60000;
+            this.shutdownTimeoutMillis = 5000;
+            this.timerTickMillis = 10;
+            this.timerWheelSize = 512;
+            this.threadNamePrefix = "SmoothBase-Async";
+            this.rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+            this.executionMode = ExecutionMode.POOLED;
+        }
+
+        /**
+         * Sets the number of worker threads kept alive even when idle.
+         *
+         * @param corePoolSize The core pool size.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of worker threads (extra workers are only started once the queue is full).
+         *
+         * @param maxPoolSize The maximum pool size.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of tasks waiting for a worker.
+         *
+         * @param queueCapacity The queue capacity.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the time in milliseconds an idle non-core worker is kept alive.
+         *
+         * @param keepAliveMillis The keep alive time in milliseconds.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setKeepAliveMillis(long keepAliveMillis) {
+            this.keepAliveMillis = keepAliveMillis;
+            return this;
+        }
+
+        /**
+         * Sets the time in milliseconds to wait for running tasks on shutdown.
+         *
+         * @param shutdownTimeoutMillis The shutdown timeout in milliseconds.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+            this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets the duration in milliseconds of a tick of the delayed task timer. Delays are rounded up to a tick.
+         *
+         * @param timerTickMillis The timer tick duration in milliseconds.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setTimerTickMillis(long timerTickMillis) {
+            this.timerTickMillis = timerTickMillis;
+            return this;
+        }
+
+        /**
+         * Sets the number of buckets of the delayed task timer (rounded up to a power of two).
+         *
+         * @param timerWheelSize The timer wheel size.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setTimerWheelSize(int timerWheelSize) {
+            this.timerWheelSize = timerWheelSize;
+            return this;
+        }
+
+        /**
+         * Sets the prefix for the worker thread names.
+         *
+         * @param threadNamePrefix The thread name prefix.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setThreadNamePrefix(@NotNull String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+            return this;
+        }
+
+        /**
+         * Sets the policy applied when both the pool and the queue are full.
+         *
+         * @param rejectionPolicy The rejection policy.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setRejectionPolicy(@NotNull RejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the kind of threads running the asynchronous tasks.
+         *
+         * @param executionMode The execution mode.
+         * @return The current Builder instance.
+         */
+        @NotNull
+        public Builder setExecutionMode(@NotNull ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * Builds and returns a TaskExecutorConfig instance with the current configuration.
+         *
+         * @return The created TaskExecutorConfig instance.
+         */
+        @NotNull
+        public TaskExecutorConfig build() {
+            return new TaskExecutorConfig(corePoolSize, maxPoolSize, queueCapacity, keepAliveMillis,
+                    shutdownTimeoutMillis, timerTickMillis, timerWheelSize, threadNamePrefix, rejectionPolicy,
+                    executionMode);
+        }
+    }
+}
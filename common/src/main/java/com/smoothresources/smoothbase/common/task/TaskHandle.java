@@ -0,0 +1,205 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Default implementation of {@link ScheduledTask}, tracking the state of a task executed by a {@link TaskManager}.
+ * <p>
+ * The task manager calls {@link #run(Runnable, boolean)} for every execution and registers, through
+ * {@link #setCanceller(Runnable)}, the action releasing the underlying timer entry or platform task on cancellation.
+ * Executions requested while a previous one is still running are skipped (and counted), so a repeating task never
+ * overlaps itself. An exception thrown by an execution is reported to the uncaught exception handler of the thread,
+ * and only ends the task if it was its last execution: like on the Bukkit and Velocity schedulers, a repeating task
+ * keeps running after a failed execution.
+ */
+public class TaskHandle implements ScheduledTask {
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.SCHEDULED);
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private List<Consumer<ScheduledTask>> callbacks;
+    private volatile Runnable canceller;
+    private volatile boolean lastRun;
+    private volatile Throwable failure;
+
+    /**
+     * Sets the action releasing the resources of the task when it is cancelled (or fails). If the task is already
+     * done, the action is run immediately.
+     *
+     * @param canceller The cancel action.
+     */
+    public void setCanceller(@NotNull Runnable canceller) {
+        this.canceller = canceller;
+        if (isDone()) {
+            releaseCanceller();
+        }
+    }
+
+    /**
+     * Runs an execution of the task, unless the task is done or another execution is still running.
+     *
+     * @param task The task to run.
+     * @param last Whether this is the last execution of the task.
+     */
+    public void run(@NotNull Runnable task, boolean last) {
+        if (last) {
+            lastRun = true;
+        }
+
+        if (!state.compareAndSet(State.SCHEDULED, State.RUNNING)) {
+            if (state.get() == State.RUNNING) {
+                skippedCount.incrementAndGet();
+            }
+
+            return;
+        }
+
+        Throwable thrown = null;
+        try {
+            task.run();
+        } catch (Throwable throwable) {
+            thrown = throwable;
+            failure = throwable;
+        }
+
+        State result = thrown == null ? State.COMPLETED : State.FAILED;
+        if (lastRun) {
+            finish(State.RUNNING, result);
+        } else if (state.compareAndSet(State.RUNNING, State.SCHEDULED) && lastRun) {
+            // The last execution was requested (and skipped) while this one was running
+            finish(State.SCHEDULED, result);
+        }
+
+        if (thrown != null) {
+            if (isDone()) {
+                releaseCanceller();
+            }
+
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, thrown);
+        }
+    }
+
+    /**
+     * Fails the task without running it (e.g. because its execution was rejected by a saturated pool). The exception
+     * is reported like an exception thrown by the task.
+     *
+     * @param throwable The cause of the failure.
+     * @return True if the task failed, false if it was already done.
+     */
+    public boolean fail(@NotNull Throwable throwable) {
+        while (true) {
+            State current = state.get();
+            if (current.isDone()) {
+                return false;
+            }
+
+            failure = throwable;
+            if (finish(current, State.FAILED)) {
+                releaseCanceller();
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        while (true) {
+            State current = state.get();
+            if (current.isDone()) {
+                return false;
+            }
+
+            if (finish(current, State.CANCELLED)) {
+                releaseCanceller();
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state.get() == State.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state.get().isDone();
+    }
+
+    @NotNull
+    @Override
+    public State getState() {
+        return state.get();
+    }
+
+    @Nullable
+    @Override
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public int getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    @NotNull
+    @Override
+    public ScheduledTask onComplete(@NotNull Consumer<ScheduledTask> callback) {
+        synchronized (this) {
+            if (!isDone()) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>(1);
+                }
+
+                callbacks.add(callback);
+                return this;
+            }
+        }
+
+        callback.accept(this);
+        return this;
+    }
+
+    private boolean finish(@NotNull State expected, @NotNull State result) {
+        if (!state.compareAndSet(expected, result)) {
+            return false;
+        }
+
+        List<Consumer<ScheduledTask>> toCall;
+        synchronized (this) {
+            toCall = callbacks;
+            callbacks = null;
+        }
+
+        if (toCall != null) {
+            for (Consumer<ScheduledTask> callback : toCall) {
+                try {
+                    callback.accept(this);
+                } catch (Throwable throwable) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void releaseCanceller() {
+        Runnable canceller = this.canceller;
+        if (canceller != null) {
+            this.canceller = null;
+            canceller.run();
+        }
+    }
+}
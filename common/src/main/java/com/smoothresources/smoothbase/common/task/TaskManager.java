@@ -1,14 +1,74 @@
 package com.smoothresources.smoothbase.common.task;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 /**
  * Abstract class for managing tasks.
+ * <p>
+ * Asynchronous tasks run on a bounded worker pool configured through {@link TaskExecutorConfig}, and delayed or
+ * repeating tasks are timed by a shared {@link HashedWheelTimer}, so the number of threads does not grow with the
+ * load and a pending delayed task only costs a wheel entry. Every scheduling method returns a {@link ScheduledTask}
+ * handle which can be used to cancel the task or to be notified once it is done. Execution metrics and a slow task
+ * watchdog can be enabled with {@link #enableMetrics(Logger, long)}.
+ * {@link #shutdown()} should be called when the plugin is disabled.
  */
 public abstract class TaskManager {
 
+    private final TaskExecutorConfig config;
+    private final ExecutorService asyncExecutor;
+    private final boolean virtualThreads;
+    private final HashedWheelTimer timer;
+    private final Executor syncExecutor = this::executeSync;
+    private final ConcurrentHashMap<Object, ScheduledTask> debouncedTasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Object, ScheduledTask> coalescedTasks = new ConcurrentHashMap<>();
+    private volatile TaskMetrics metrics;
+    private volatile HashedWheelTimer.Timeout metricsWatchdog;
+
+    /**
+     * Creates a new TaskManager with the default worker pool configuration.
+     */
+    public TaskManager() {
+        this(new TaskExecutorConfig.Builder().build());
+    }
+
+    /**
+     * Creates a new TaskManager.
+     *
+     * @param config The worker pool configuration.
+     */
+    public TaskManager(@NotNull TaskExecutorConfig config) {
+        this.config = config;
+
+        ExecutorService virtualExecutor = null;
+        if (config.getExecutionMode() == TaskExecutorConfig.ExecutionMode.VIRTUAL) {
+            virtualExecutor = VirtualThreads.newExecutor(config.getThreadNamePrefix());
+        }
+
+        this.virtualThreads = virtualExecutor != null;
+        this.asyncExecutor = virtualThreads ? virtualExecutor : new ThreadPoolExecutor(config.getCorePoolSize(),
+                config.getMaxPoolSize(), config.getKeepAliveMillis(), TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()), new NamedThreadFactory(config.getThreadNamePrefix()),
+                new RejectionHandler(config.getRejectionPolicy()));
+        this.timer = new HashedWheelTimer(config.getThreadNamePrefix() + "-Timer", config.getTimerTickMillis(),
+                config.getTimerWheelSize());
+    }
+
     /**
      * Runs a task synchronously.
      *
@@ -16,17 +76,27 @@ public abstract class TaskManager {
      */
     public abstract void runTaskSync(@NotNull Runnable task);
 
+    /**
+     * Checks if the current thread is the thread running the synchronous tasks. Platforms without such a thread
+     * return false.
+     *
+     * @return True if the current thread runs the synchronous tasks, false otherwise.
+     */
+    public boolean isSyncThread() {
+        return false;
+    }
+
     /**
      * Runs a task asynchronously.
      *
      * @param task The task to run.
-     * @return The thread running the task.
+     * @return The scheduled task.
      */
     @NotNull
-    public Thread runTaskAsync(@NotNull Runnable task) {
-        Thread thread = new Thread(task);
-        thread.start();
-        return thread;
+    public ScheduledTask runTaskAsync(@NotNull Runnable task) {
+        TaskHandle handle = new TaskHandle();
+        execute(handle, task, true, false);
+        return handle;
     }
 
     /**
@@ -34,20 +104,11 @@ public abstract class TaskManager {
      *
      * @param task  The task to run.
      * @param delay The delay in milliseconds before running the task.
-     * @return The thread running the task.
+     * @return The scheduled task.
      */
     @NotNull
-    public Thread runTaskLaterSync(@NotNull Runnable task, long delay) {
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(delay);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            runTaskSync(task);
-        });
-        thread.start();
-        return thread;
+    public ScheduledTask runTaskLaterSync(@NotNull Runnable task, long delay) {
+        return schedule(task, delay, 0, 1, this::dispatchSync);
     }
 
     /**
@@ -55,145 +116,572 @@ public abstract class TaskManager {
      *
      * @param task  The task to run.
      * @param delay The delay in milliseconds before running the task.
-     * @return The thread running the task.
+     * @return The scheduled task.
      */
     @NotNull
-    public Thread runTaskLaterAsync(@NotNull Runnable task, long delay) {
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(delay);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            task.run();
-        });
-        thread.start();
-        return thread;
+    public ScheduledTask runTaskLaterAsync(@NotNull Runnable task, long delay) {
+        return schedule(task, delay, 0, 1, this::dispatchAsync);
     }
 
     /**
-     * Runs a task synchronously at a fixed rate.
+     * Runs a task synchronously at a fixed rate. An execution is skipped if the previous one is still running, and an
+     * exception thrown by an execution is reported without stopping the task.
      *
      * @param task         The task to run.
      * @param initialDelay The initial delay in milliseconds before running the task.
      * @param delay        The delay in milliseconds between successive executions.
-     * @return The thread running the task.
+     * @return The scheduled task.
      */
     @NotNull
-    public Thread runTaskTimerSync(@NotNull Runnable task, long initialDelay, long delay) {
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(initialDelay);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            while (true) {
-                runTaskSync(task);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-        thread.start();
-        return thread;
+    public ScheduledTask runTaskTimerSync(@NotNull Runnable task, long initialDelay, long delay) {
+        return schedule(task, initialDelay, delay, 0, this::dispatchSync);
     }
 
     /**
-     * Runs a task synchronously a specified number of times at a fixed rate.
+     * Runs a task synchronously a specified number of times at a fixed rate. An execution is skipped if the
+     * previous one is still running, and skipped executions count against the number of times (see
+     * {@link ScheduledTask#getSkippedCount()}). An exception thrown by an execution is reported without stopping
+     * the task, unless it is the last one.
      *
      * @param task         The task to run.
      * @param initialDelay The initial delay in milliseconds before running the task.
      * @param delay        The delay in milliseconds between successive executions.
      * @param times        The number of times to execute the task.
-     * @return The thread running the task.
+     * @return The scheduled task.
      */
     @NotNull
-    public Thread runTaskTimerSync(@NotNull Runnable task, long initialDelay, long delay, int times) {
-        AtomicInteger timesExecuted = new AtomicInteger(0);
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(initialDelay);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            while (true) {
-                runTaskSync(task);
-                if (timesExecuted.incrementAndGet() > times) {
-                    Thread.currentThread().interrupt();
-                }
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-        thread.start();
-        return thread;
+    public ScheduledTask runTaskTimerSync(@NotNull Runnable task, long initialDelay, long delay, int times) {
+        return schedule(task, initialDelay, delay, times, this::dispatchSync);
     }
 
     /**
-     * Runs a task asynchronously at a fixed rate.
+     * Runs a task asynchronously at a fixed rate. An execution is skipped if the previous one is still running, and an
+     * exception thrown by an execution is reported without stopping the task.
      *
      * @param task         The task to run.
      * @param initialDelay The initial delay in milliseconds before running the task.
      * @param delay        The delay in milliseconds between successive executions.
-     * @return The thread running the task.
+     * @return The scheduled task.
      */
     @NotNull
-    public Thread runTaskTimerAsync(@NotNull Runnable task, long initialDelay, long delay) {
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(initialDelay);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            while (true) {
-                task.run();
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-        thread.start();
-        return thread;
+    public ScheduledTask runTaskTimerAsync(@NotNull Runnable task, long initialDelay, long delay) {
+        return schedule(task, initialDelay, delay, 0, this::dispatchAsync);
     }
 
     /**
-     * Runs a task asynchronously a specified number of times at a fixed rate.
+     * Runs a task asynchronously a specified number of times at a fixed rate. An execution is skipped if the
+     * previous one is still running, and skipped executions count against the number of times (see
+     * {@link ScheduledTask#getSkippedCount()}). An exception thrown by an execution is reported without stopping
+     * the task, unless it is the last one.
      *
      * @param task         The task to run.
      * @param initialDelay The initial delay in milliseconds before running the task.
      * @param delay        The delay in milliseconds between successive executions.
      * @param times        The number of times to execute the task.
-     * @return The thread running the task.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask runTaskTimerAsync(@NotNull Runnable task, long initialDelay, long delay, int times) {
+        return schedule(task, initialDelay, delay, times, this::dispatchAsync);
+    }
+
+    /**
+     * Computes a value asynchronously.
+     *
+     * @param supplier The supplier computing the value.
+     * @param <T>      The type of the value.
+     * @return A future completed with the value, or completed exceptionally with the exception thrown by the supplier.
+     * Cancelling the future cancels the task if it has not started yet.
+     */
+    @NotNull
+    public <T> CompletableFuture<T> supplyAsync(@NotNull Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ScheduledTask task = runTaskAsync(named(supplier, () -> complete(future, supplier)));
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                task.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Computes a value synchronously.
+     *
+     * @param supplier The supplier computing the value.
+     * @param <T>      The type of the value.
+     * @return A future completed with the value, or completed exceptionally with the exception thrown by the supplier.
+     */
+    @NotNull
+    public <T> CompletableFuture<T> supplySync(@NotNull Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        syncExecutor.execute(named(supplier, () -> complete(future, supplier)));
+        return future;
+    }
+
+    /**
+     * Transforms the result of a future synchronously once it is completed. The function is handed directly from the
+     * completing thread to the synchronous thread (or run inline if the future is completed on it).
+     *
+     * @param future   The future to transform.
+     * @param function The function transforming the result.
+     * @param <T>      The type of the result of the future.
+     * @param <R>      The type of the transformed result.
+     * @return A future completed with the transformed result, or exceptionally if the source future or the function
+     * failed.
+     */
+    @NotNull
+    public <T, R> CompletableFuture<R> thenSync(@NotNull CompletableFuture<T> future,
+                                                @NotNull Function<? super T, ? extends R> function) {
+        return future.thenApplyAsync(function, syncExecutor);
+    }
+
+    /**
+     * Transforms the result of a future asynchronously once it is completed.
+     *
+     * @param future   The future to transform.
+     * @param function The function transforming the result.
+     * @param <T>      The type of the result of the future.
+     * @param <R>      The type of the transformed result.
+     * @return A future completed with the transformed result, or exceptionally if the source future or the function
+     * failed.
+     */
+    @NotNull
+    public <T, R> CompletableFuture<R> thenAsync(@NotNull CompletableFuture<T> future,
+                                                 @NotNull Function<? super T, ? extends R> function) {
+        return future.thenApplyAsync(function, asyncExecutor);
+    }
+
+    /**
+     * Consumes the result of a future synchronously once it is completed.
+     *
+     * @param future   The future to consume.
+     * @param consumer The consumer of the result.
+     * @param <T>      The type of the result of the future.
+     * @return A future completed once the result has been consumed, or exceptionally if the source future or the
+     * consumer failed.
+     */
+    @NotNull
+    public <T> CompletableFuture<Void> acceptSync(@NotNull CompletableFuture<T> future,
+                                                  @NotNull Consumer<? super T> consumer) {
+        return future.thenAcceptAsync(consumer, syncExecutor);
+    }
+
+    /**
+     * Consumes the result of a future asynchronously once it is completed.
+     *
+     * @param future   The future to consume.
+     * @param consumer The consumer of the result.
+     * @param <T>      The type of the result of the future.
+     * @return A future completed once the result has been consumed, or exceptionally if the source future or the
+     * consumer failed.
+     */
+    @NotNull
+    public <T> CompletableFuture<Void> acceptAsync(@NotNull CompletableFuture<T> future,
+                                                   @NotNull Consumer<? super T> consumer) {
+        return future.thenAcceptAsync(consumer, asyncExecutor);
+    }
+
+    /**
+     * Runs a task synchronously once no other task has been debounced under the same key for a delay. Each call
+     * cancels the task previously debounced under the key, so a burst of calls results in a single execution, after
+     * the last call.
+     *
+     * @param key   The key identifying the logical job (e.g. the file to save).
+     * @param delay The delay in milliseconds without new calls before running the task.
+     * @param task  The task to run.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask debounceSync(@NotNull Object key, long delay, @NotNull Runnable task) {
+        return debounce(key, runTaskLaterSync(task, delay));
+    }
+
+    /**
+     * Runs a task asynchronously once no other task has been debounced under the same key for a delay. Each call
+     * cancels the task previously debounced under the key, so a burst of calls results in a single execution, after
+     * the last call.
+     *
+     * @param key   The key identifying the logical job (e.g. the file to save).
+     * @param delay The delay in milliseconds without new calls before running the task.
+     * @param task  The task to run.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask debounceAsync(@NotNull Object key, long delay, @NotNull Runnable task) {
+        return debounce(key, runTaskLaterAsync(task, delay));
+    }
+
+    /**
+     * Runs a task synchronously unless a task coalesced under the same key is still waiting to start, in which case
+     * that pending task is returned instead. A task submitted once the previous one has started is run again, so
+     * changes made during an execution are never missed.
+     *
+     * @param key  The key identifying the logical job (e.g. the scoreboard to refresh).
+     * @param task The task to run.
+     * @return The scheduled task, or the pending task coalesced under the same key.
+     */
+    @NotNull
+    public ScheduledTask coalesceSync(@NotNull Object key, @NotNull Runnable task) {
+        return coalesce(key, task, true);
+    }
+
+    /**
+     * Runs a task asynchronously unless a task coalesced under the same key is still waiting to start, in which case
+     * that pending task is returned instead. A task submitted once the previous one has started is run again, so
+     * changes made during an execution are never missed.
+     *
+     * @param key  The key identifying the logical job (e.g. the file to save).
+     * @param task The task to run.
+     * @return The scheduled task, or the pending task coalesced under the same key.
+     */
+    @NotNull
+    public ScheduledTask coalesceAsync(@NotNull Object key, @NotNull Runnable task) {
+        return coalesce(key, task, false);
+    }
+
+    /**
+     * Enables the recording of execution metrics, replacing the metrics previously enabled. Every task executed from
+     * now on is recorded, except the ones passed directly to {@link #runTaskSync(Runnable)}.
+     *
+     * @param logger                  The logger used to report slow tasks.
+     * @param slowTaskThresholdMillis The execution time in milliseconds after which the stack trace of a running task
+     *                                is logged, or 0 to disable the watchdog.
+     * @return The enabled metrics.
+     */
+    @NotNull
+    public synchronized TaskMetrics enableMetrics(@NotNull Logger logger, long slowTaskThresholdMillis) {
+        disableMetrics();
+        TaskMetrics metrics = new TaskMetrics(logger, slowTaskThresholdMillis);
+        if (slowTaskThresholdMillis > 0) {
+            long period = Math.max(config.getTimerTickMillis(), slowTaskThresholdMillis / 4);
+            this.metricsWatchdog = timer.schedule(() -> checkSlowTasks(metrics), period, period, 0);
+        }
+
+        this.metrics = metrics;
+        return metrics;
+    }
+
+    /**
+     * Disables the recording of execution metrics and the slow task watchdog.
+     */
+    public synchronized void disableMetrics() {
+        HashedWheelTimer.Timeout watchdog = this.metricsWatchdog;
+        if (watchdog != null) {
+            watchdog.cancel();
+            this.metricsWatchdog = null;
+        }
+
+        this.metrics = null;
+    }
+
+    /**
+     * Gets the execution metrics.
+     *
+     * @return The execution metrics, or null if they are not enabled.
+     */
+    @Nullable
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops accepting new tasks, cancels every delayed and repeating task and waits (up to the configured shutdown
+     * timeout) for the running asynchronous tasks to finish.
+     */
+    public void shutdown() {
+        for (Runnable action : timer.stop()) {
+            // Completes the delayed and repeating tasks which will never run again
+            if (action instanceof TimerAction timerAction) {
+                timerAction.handle.cancel();
+            }
+        }
+
+        asyncExecutor.shutdown();
+
+        try {
+            if (!asyncExecutor.awaitTermination(config.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                asyncExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            asyncExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the worker pool configuration.
+     *
+     * @return The worker pool configuration.
+     */
+    @NotNull
+    public TaskExecutorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Gets the timer used for delayed and repeating tasks.
+     *
+     * @return The timer.
+     */
+    @NotNull
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Checks if the asynchronous tasks run on virtual threads (the virtual execution mode was requested and the JVM
+     * supports it).
+     *
+     * @return True if virtual threads are used, false otherwise.
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Gets an executor running tasks synchronously (inline if already called from the synchronous thread).
+     *
+     * @return The synchronous executor.
+     */
+    @NotNull
+    public Executor getSyncExecutor() {
+        return syncExecutor;
+    }
+
+    /**
+     * Gets the executor running the asynchronous tasks.
+     *
+     * @return The asynchronous executor.
+     */
+    @NotNull
+    public ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Schedules a task on the timer, handing each execution to a dispatcher once its delay has expired. Used by
+     * platform task managers to time tasks which must run on a specific thread (e.g. the thread owning an entity).
+     *
+     * @param task         The task to run.
+     * @param initialDelay The initial delay in milliseconds before running the task.
+     * @param period       The period in milliseconds between successive executions, or 0 to run the task once.
+     * @param times        The number of times to execute the task, or 0 to run it until cancelled.
+     * @param dispatcher   The dispatcher receiving the task handle and the execution to run (from the timer thread,
+     *                     so it must only hand the execution off to another thread).
+     * @return The scheduled task.
+     */
+    @NotNull
+    protected ScheduledTask schedule(@NotNull Runnable task, long initialDelay, long period, int times,
+                                     @NotNull BiConsumer<ScheduledTask, Runnable> dispatcher) {
+        TaskHandle handle = new TaskHandle();
+        TimerAction action = new TimerAction(handle, task, period == 0 ? 1 : times, dispatcher);
+        HashedWheelTimer.Timeout timeout = timer.schedule(action, initialDelay, period, period == 0 ? 0 : times);
+        handle.setCanceller(timeout::cancel);
+        return handle;
+    }
+
+    /**
+     * Wraps a task so that its execution is recorded by the enabled metrics. Must be called when the task is
+     * submitted, as the queue wait time is measured from this call.
+     *
+     * @param task The task to wrap.
+     * @return The instrumented task, or the task itself if the metrics are not enabled.
      */
     @NotNull
-    public Thread runTaskTimerAsync(@NotNull Runnable task, long initialDelay, long delay, int times) {
-        AtomicInteger timesExecuted = new AtomicInteger(0);
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(initialDelay);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+    protected Runnable instrument(@NotNull Runnable task) {
+        TaskMetrics metrics = this.metrics;
+        return metrics == null ? task : metrics.wrap(task);
+    }
+
+    private void checkSlowTasks(@NotNull TaskMetrics metrics) {
+        // Collecting and logging stack traces is too slow for the timer thread, which only hands the check off
+        try {
+            asyncExecutor.execute(metrics::checkSlowTasks);
+        } catch (RejectedExecutionException e) {
+            // The pool is saturated or shut down: the next period checks again
+        }
+    }
+
+    private void dispatchSync(@NotNull ScheduledTask handle, @NotNull Runnable execution) {
+        runTaskSync(execution);
+    }
+
+    private void dispatchAsync(@NotNull ScheduledTask handle, @NotNull Runnable execution) {
+        try {
+            asyncExecutor.execute(execution);
+        } catch (RejectedExecutionException e) {
+            // Called from the timer thread, which must never run the task itself
+            if (handle instanceof TaskHandle taskHandle) {
+                taskHandle.fail(e);
+            } else {
+                handle.cancel();
+            }
+        }
+    }
+
+    private void execute(@NotNull TaskHandle handle, @NotNull Runnable task, boolean last, boolean sync) {
+        Runnable instrumented = instrument(task);
+        try {
+            if (sync) {
+                runTaskSync(() -> handle.run(instrumented, last));
+            } else {
+                asyncExecutor.execute(new Execution(handle, instrumented, last));
+            }
+        } catch (RuntimeException e) {
+            // Rejected by the executor: the handle would otherwise stay scheduled forever (and a coalesced key taken)
+            handle.cancel();
+            throw e;
+        }
+    }
+
+    @NotNull
+    private ScheduledTask debounce(@NotNull Object key, @NotNull ScheduledTask task) {
+        ScheduledTask previous = debouncedTasks.put(key, task);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        task.onComplete(completed -> debouncedTasks.remove(key, completed));
+        return task;
+    }
+
+    @NotNull
+    private ScheduledTask coalesce(@NotNull Object key, @NotNull Runnable task, boolean sync) {
+        TaskHandle handle = new TaskHandle();
+        ScheduledTask pending = coalescedTasks.putIfAbsent(key, handle);
+        if (pending != null) {
+            return pending;
+        }
+
+        // Cancelled before starting, or rejected by the executor: release the key so that the next call schedules a
+        // new task
+        handle.onComplete(completed -> coalescedTasks.remove(key, completed));
+        execute(handle, named(task, () -> {
+            coalescedTasks.remove(key, handle);
+            task.run();
+        }), true, sync);
+        return handle;
+    }
+
+    private void executeSync(@NotNull Runnable task) {
+        Runnable instrumented = instrument(task);
+        if (isSyncThread()) {
+            instrumented.run();
+        } else {
+            runTaskSync(instrumented);
+        }
+    }
+
+    @NotNull
+    private Runnable named(@NotNull Object source, @NotNull Runnable task) {
+        // Records the wrapper under the name of the user task rather than under TaskManager
+        return metrics == null ? task : new NamedTask(TaskMetrics.nameOf(source), task);
+    }
+
+    private static <T> void complete(@NotNull CompletableFuture<T> future, @NotNull Supplier<T> supplier) {
+        if (future.isDone()) return;
+
+        try {
+            future.complete(supplier.get());
+        } catch (Throwable throwable) {
+            future.completeExceptionally(throwable);
+        }
+    }
+
+    /**
+     * Action run by the timer on every expiry, handing the execution of the task to the right thread.
+     */
+    private class TimerAction implements Runnable {
+
+        private final TaskHandle handle;
+        private final Runnable task;
+        private final int times;
+        private final BiConsumer<ScheduledTask, Runnable> dispatcher;
+        private int timesFired;
+
+        private TimerAction(@NotNull TaskHandle handle, @NotNull Runnable task, int times,
+                            @NotNull BiConsumer<ScheduledTask, Runnable> dispatcher) {
+            this.handle = handle;
+            this.task = task;
+            this.times = times;
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void run() {
+            // Only called by the timer thread
+            boolean last = times > 0 && ++timesFired >= times;
+            dispatcher.accept(handle, new Execution(handle, instrument(task), last));
+        }
+    }
+
+    /**
+     * Execution of a task submitted to the worker pool, known to the rejection handler so that the handle of a dropped
+     * execution does not stay scheduled forever.
+     */
+    private static class Execution implements Runnable {
+
+        private final TaskHandle handle;
+        private final Runnable task;
+        private final boolean last;
+
+        private Execution(@NotNull TaskHandle handle, @NotNull Runnable task, boolean last) {
+            this.handle = handle;
+            this.task = task;
+            this.last = last;
+        }
+
+        @Override
+        public void run() {
+            handle.run(task, last);
+        }
+    }
+
+    /**
+     * Applies the rejection policy of the worker pool, without ever running a task on the timer thread, and cancelling
+     * the handle of the executions it drops.
+     */
+    private class RejectionHandler implements RejectedExecutionHandler {
+
+        private final TaskExecutorConfig.RejectionPolicy policy;
+
+        private RejectionHandler(@NotNull TaskExecutorConfig.RejectionPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                cancel(task);
+                if (policy == TaskExecutorConfig.RejectionPolicy.ABORT) {
+                    throw new RejectedExecutionException("Task manager is shut down");
+                }
+
+                return;
             }
-            while (true) {
-                task.run();
-                if (timesExecuted.incrementAndGet() > times) {
-                    Thread.currentThread().interrupt();
+
+            switch (policy) {
+                case CALLER_RUNS -> {
+                    if (timer.isTimerThread()) {
+                        throw new RejectedExecutionException("Worker pool is saturated");
+                    }
+
+                    task.run();
                 }
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                case ABORT -> throw new RejectedExecutionException("Worker pool is saturated");
+                case DISCARD -> cancel(task);
+                case DISCARD_OLDEST -> {
+                    cancel(executor.getQueue().poll());
+                    executor.execute(task);
                 }
             }
-        });
-        thread.start();
-        return thread;
+        }
+
+        private void cancel(@Nullable Runnable task) {
+            if (task instanceof Execution execution) {
+                execution.handle.cancel();
+            }
+        }
     }
 }
@@ -0,0 +1,342 @@
+package com.smoothresources.smoothbase.common.task;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Execution metrics of the tasks run by a {@link TaskManager}, enabled through
+ * {@link TaskManager#enableMetrics(Logger, long)}.
+ * <p>
+ * Executions are grouped by task name: the name of a {@link NamedTask}, or the class declaring the task otherwise
+ * (lambdas are grouped under their enclosing class). For each name, the number of executions and failures, the time
+ * spent waiting in a queue before running and the execution time are recorded. A watchdog logs the stack trace of
+ * every task running for longer than the slow task threshold, while it is still running, so the code holding a
+ * thread (or the tick) can be found directly.
+ */
+public class TaskMetrics {
+
+    private static final String LAMBDA_MARKER = "$$Lambda";
+    private static final ClassValue<String> CLASS_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            String name = type.getName();
+            int lambda = name.indexOf(LAMBDA_MARKER);
+            return lambda == -1 ? name : name.substring(0, lambda);
+        }
+    };
+
+    private final Logger logger;
+    private final long slowTaskThresholdNanos;
+    private final Map<String, TaskStats> stats = new ConcurrentHashMap<>();
+    private final Set<Execution> runningExecutions = ConcurrentHashMap.newKeySet();
+    private final LongAdder slowExecutions = new LongAdder();
+
+    /**
+     * Creates a new TaskMetrics.
+     *
+     * @param logger                  The logger used to report slow tasks.
+     * @param slowTaskThresholdMillis The execution time in milliseconds after which a task is reported, or 0 to
+     *                                disable the watchdog.
+     */
+    public TaskMetrics(@NotNull Logger logger, long slowTaskThresholdMillis) {
+        if (slowTaskThresholdMillis < 0) {
+            throw new IllegalArgumentException("Slow task threshold must not be negative");
+        }
+
+        this.logger = logger;
+        this.slowTaskThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowTaskThresholdMillis);
+    }
+
+    /**
+     * Gets the name under which the executions of a task are recorded.
+     *
+     * @param task The task (or the supplier, consumer... it runs).
+     * @return The name of the task.
+     */
+    @NotNull
+    public static String nameOf(@NotNull Object task) {
+        if (task instanceof NamedTask namedTask) {
+            return namedTask.getName();
+        }
+
+        return CLASS_NAMES.get(task.getClass());
+    }
+
+    /**
+     * Wraps a task so that its execution is recorded. The queue wait time is measured from the call to this method.
+     *
+     * @param task The task to wrap.
+     * @return The instrumented task.
+     */
+    @NotNull
+    public Runnable wrap(@NotNull Runnable task) {
+        TaskStats taskStats = stats.computeIfAbsent(nameOf(task), TaskStats::new);
+        long submittedAt = System.nanoTime();
+        return () -> record(taskStats, task, submittedAt);
+    }
+
+    /**
+     * Gets the metrics of every task name seen so far.
+     *
+     * @return An unmodifiable view of the metrics by task name.
+     */
+    @NotNull
+    public Map<String, TaskStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Gets the number of tasks currently running.
+     *
+     * @return The number of running tasks.
+     */
+    public int getRunningCount() {
+        return runningExecutions.size();
+    }
+
+    /**
+     * Gets the number of executions reported by the watchdog.
+     *
+     * @return The number of slow executions.
+     */
+    public long getSlowExecutionCount() {
+        return slowExecutions.sum();
+    }
+
+    /**
+     * Gets the execution time in milliseconds after which a task is reported.
+     *
+     * @return The slow task threshold in milliseconds, or 0 if the watchdog is disabled.
+     */
+    public long getSlowTaskThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowTaskThresholdNanos);
+    }
+
+    /**
+     * Clears the recorded metrics. Running tasks are still watched.
+     */
+    public void reset() {
+        stats.clear();
+        slowExecutions.reset();
+    }
+
+    /**
+     * Logs the stack trace of the tasks running for longer than the slow task threshold which have not been reported
+     * yet. Called periodically by the task manager, from its worker pool.
+     */
+    public synchronized void checkSlowTasks() {
+        if (slowTaskThresholdNanos == 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (Execution execution : runningExecutions) {
+            if (now - execution.startedAt < slowTaskThresholdNanos || execution.reported) {
+                continue;
+            }
+
+            execution.reported = true;
+            slowExecutions.increment();
+            execution.stats.slowExecutions.increment();
+
+            StringBuilder message = new StringBuilder()
+                    .append("Task ").append(execution.stats.name)
+                    .append(" has been running for ").append(TimeUnit.NANOSECONDS.toMillis(now - execution.startedAt))
+                    .append("ms on thread ").append(execution.thread.getName());
+            for (StackTraceElement element : execution.thread.getStackTrace()) {
+                message.append("\n\tat ").append(element);
+            }
+
+            logger.log(Level.WARNING, message.toString());
+        }
+    }
+
+    private void record(@NotNull TaskStats taskStats, @NotNull Runnable task, long submittedAt) {
+        long startedAt = System.nanoTime();
+        taskStats.waitHistogram.record(startedAt - submittedAt);
+        taskStats.totalWaitNanos.add(startedAt - submittedAt);
+        taskStats.maxWaitNanos.accumulateAndGet(startedAt - submittedAt, Math::max);
+
+        Execution execution = new Execution(taskStats, Thread.currentThread(), startedAt);
+        runningExecutions.add(execution);
+        taskStats.running.incrementAndGet();
+
+        try {
+            task.run();
+        } catch (Throwable throwable) {
+            taskStats.failures.increment();
+            throw throwable;
+        } finally {
+            long duration = System.nanoTime() - startedAt;
+            runningExecutions.remove(execution);
+            taskStats.running.decrementAndGet();
+            taskStats.executions.increment();
+            taskStats.executionHistogram.record(duration);
+            taskStats.totalExecutionNanos.add(duration);
+            taskStats.maxExecutionNanos.accumulateAndGet(duration, Math::max);
+        }
+    }
+
+    /**
+     * Running execution watched for slowness.
+     */
+    private static class Execution {
+
+        private final TaskStats stats;
+        private final Thread thread;
+        private final long startedAt;
+        // Only accessed by the watchdog
+        private boolean reported;
+
+        private Execution(@NotNull TaskStats stats, @NotNull Thread thread, long startedAt) {
+            this.stats = stats;
+            this.thread = thread;
+            this.startedAt = startedAt;
+        }
+    }
+
+    /**
+     * Execution metrics of the tasks sharing a name.
+     */
+    public static class TaskStats {
+
+        private final String name;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowExecutions = new LongAdder();
+        private final AtomicInteger running = new AtomicInteger(0);
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong(0);
+        private final LongAdder totalExecutionNanos = new LongAdder();
+        private final AtomicLong maxExecutionNanos = new AtomicLong(0);
+        private final LatencyHistogram waitHistogram = new LatencyHistogram();
+        private final LatencyHistogram executionHistogram = new LatencyHistogram();
+
+        private TaskStats(@NotNull String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the tasks.
+         *
+         * @return The task name.
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of finished executions (including the failed ones).
+         *
+         * @return The number of executions.
+         */
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        /**
+         * Gets the number of executions which threw an exception.
+         *
+         * @return The number of failures.
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * Gets the number of executions reported by the watchdog.
+         *
+         * @return The number of slow executions.
+         */
+        public long getSlowExecutions() {
+            return slowExecutions.sum();
+        }
+
+        /**
+         * Gets the number of executions currently running.
+         *
+         * @return The number of running executions.
+         */
+        public int getRunning() {
+            return running.get();
+        }
+
+        /**
+         * Gets the average time spent waiting in a queue before running.
+         *
+         * @return The average wait time in nanoseconds.
+         */
+        public long getAverageWaitNanos() {
+            long count = waitHistogram.getTotalCount();
+            return count == 0 ? 0 : totalWaitNanos.sum() / count;
+        }
+
+        /**
+         * Gets the longest time spent waiting in a queue before running.
+         *
+         * @return The maximum wait time in nanoseconds.
+         */
+        public long getMaxWaitNanos() {
+            return maxWaitNanos.get();
+        }
+
+        /**
+         * Gets the total execution time.
+         *
+         * @return The total execution time in nanoseconds.
+         */
+        public long getTotalExecutionNanos() {
+            return totalExecutionNanos.sum();
+        }
+
+        /**
+         * Gets the average execution time.
+         *
+         * @return The average execution time in nanoseconds.
+         */
+        public long getAverageExecutionNanos() {
+            long count = executions.sum();
+            return count == 0 ? 0 : totalExecutionNanos.sum() / count;
+        }
+
+        /**
+         * Gets the longest execution time.
+         *
+         * @return The maximum execution time in nanoseconds.
+         */
+        public long getMaxExecutionNanos() {
+            return maxExecutionNanos.get();
+        }
+
+        /**
+         * Gets the histogram of the time spent waiting in a queue before running.
+         *
+         * @return The wait time histogram.
+         */
+        @NotNull
+        public LatencyHistogram getWaitHistogram() {
+            return waitHistogram;
+        }
+
+        /**
+         * Gets the histogram of the execution times.
+         *
+         * @return The execution time histogram.
+         */
+        @NotNull
+        public LatencyHistogram getExecutionHistogram() {
+            return executionHistogram;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.smoothresources.smoothbase.paper.task;
+
+import com.smoothresources.smoothbase.common.task.TaskExecutorConfig;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+
+/**
+ * Task manager for executing tasks in a Folia server environment.
+ * <p>
+ * Sync tasks run on the global region thread, and the entity and location variants run on the thread of the region
+ * owning the entity or location, so per-player work is spread across the region threads. The Folia schedulers are
+ * accessed through reflection, as this module is compiled against an API without them.
+ */
+public class FoliaTaskManager extends PaperTaskManager {
+
+    private static final String REGIONIZED_SERVER_CLASS = "io.papermc.paper.threadedregions.RegionizedServer";
+    private static final String SCHEDULER_PACKAGE = "io.papermc.paper.threadedregions.scheduler.";
+
+    private final Schedulers schedulers = new Schedulers();
+
+    /**
+     * Creates a new FoliaTaskManager.
+     *
+     * @param plugin The plugin instance.
+     * @throws IllegalStateException If the server is not running Folia.
+     */
+    public FoliaTaskManager(@NotNull Plugin plugin) {
+        super(plugin);
+    }
+
+    /**
+     * Creates a new FoliaTaskManager.
+     *
+     * @param plugin The plugin instance.
+     * @param config The worker pool configuration.
+     * @throws IllegalStateException If the server is not running Folia.
+     */
+    public FoliaTaskManager(@NotNull Plugin plugin, @NotNull TaskExecutorConfig config) {
+        super(plugin, config);
+    }
+
+    /**
+     * Creates a new FoliaTaskManager.
+     *
+     * @param plugin           The plugin instance.
+     * @param config           The worker pool configuration.
+     * @param syncBudgetMicros The time in microseconds the queued sync tasks may use per tick.
+     * @throws IllegalStateException If the server is not running Folia.
+     */
+    public FoliaTaskManager(@NotNull Plugin plugin, @NotNull TaskExecutorConfig config, long syncBudgetMicros) {
+        super(plugin, config, syncBudgetMicros);
+    }
+
+    /**
+     * Checks if the server is running Folia.
+     *
+     * @return True if the server is running Folia, false otherwise.
+     */
+    public static boolean isFolia() {
+        try {
+            Class.forName(REGIONIZED_SERVER_CLASS);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The task runs on the global region thread.
+     */
+    @Override
+    public void runTaskSync(@NotNull Runnable task) {
+        invoke(schedulers.globalExecute, schedulers.globalRegionScheduler, getPlugin(), task);
+    }
+
+    @Override
+    public boolean isSyncThread() {
+        return (boolean) invoke(schedulers.isGlobalTickThread, null);
+    }
+
+    @Override
+    public void runTaskSync(@NotNull Entity entity, @NotNull Runnable task, @Nullable Runnable retired) {
+        Object entityScheduler = invoke(schedulers.entityGetScheduler, entity);
+        // The entity scheduler requires a delay of at least one tick
+        boolean scheduled = (boolean) invoke(schedulers.entityExecute, entityScheduler, getPlugin(), task, retired, 1L);
+        if (!scheduled && retired != null) {
+            retired.run();
+        }
+    }
+
+    @Override
+    public void runTaskSync(@NotNull Location location, @NotNull Runnable task) {
+        invoke(schedulers.regionExecute, schedulers.regionScheduler, getPlugin(), location, task);
+    }
+
+    @NotNull
+    @Override
+    protected Runnable runEveryTick(@NotNull Runnable task) {
+        Consumer<Object> consumer = scheduledTask -> task.run();
+        Object scheduledTask = invoke(schedulers.globalRunAtFixedRate, schedulers.globalRegionScheduler, getPlugin(),
+                consumer, 1L, 1L);
+        return () -> invoke(schedulers.scheduledTaskCancel, scheduledTask);
+    }
+
+    private static Object invoke(@NotNull Method method, @Nullable Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            if (cause instanceof Error error) {
+                throw error;
+            }
+
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reflective handles on the Folia schedulers.
+     */
+    private static class Schedulers {
+
+        private final Object globalRegionScheduler;
+        private final Object regionScheduler;
+        private final Method globalExecute;
+        private final Method globalRunAtFixedRate;
+        private final Method regionExecute;
+        private final Method entityGetScheduler;
+        private final Method entityExecute;
+        private final Method scheduledTaskCancel;
+        private final Method isGlobalTickThread;
+
+        private Schedulers() {
+            try {
+                Class<?> globalSchedulerClass = Class.forName(SCHEDULER_PACKAGE + "GlobalRegionScheduler");
+                Class<?> regionSchedulerClass = Class.forName(SCHEDULER_PACKAGE + "RegionScheduler");
+                Class<?> entitySchedulerClass = Class.forName(SCHEDULER_PACKAGE + "EntityScheduler");
+                Class<?> scheduledTaskClass = Class.forName(SCHEDULER_PACKAGE + "ScheduledTask");
+
+                this.globalRegionScheduler = Bukkit.class.getMethod("getGlobalRegionScheduler").invoke(null);
+                this.regionScheduler = Bukkit.class.getMethod("getRegionScheduler").invoke(null);
+                this.globalExecute = globalSchedulerClass.getMethod("execute", Plugin.class, Runnable.class);
+                this.globalRunAtFixedRate = globalSchedulerClass.getMethod("runAtFixedRate", Plugin.class,
+                        Consumer.class, long.class, long.class);
+                this.regionExecute = regionSchedulerClass.getMethod("execute", Plugin.class, Location.class,
+                        Runnable.class);
+                this.entityGetScheduler = Entity.class.getMethod("getScheduler");
+                this.entityExecute = entitySchedulerClass.getMethod("execute", Plugin.class, Runnable.class,
+                        Runnable.class, long.class);
+                this.scheduledTaskCancel = scheduledTaskClass.getMethod("cancel");
+                this.isGlobalTickThread = Bukkit.class.getMethod("isGlobalTickThread");
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Folia schedulers are not available on this server", e);
+            }
+        }
+    }
+}
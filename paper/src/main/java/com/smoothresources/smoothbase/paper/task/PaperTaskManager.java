@@ -1,16 +1,35 @@
 package com.smoothresources.smoothbase.paper.task;
 
+import com.smoothresources.smoothbase.common.task.ScheduledTask;
+import com.smoothresources.smoothbase.common.task.TaskExecutorConfig;
+import com.smoothresources.smoothbase.common.task.TaskHandle;
 import com.smoothresources.smoothbase.common.task.TaskManager;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Task manager for executing tasks in a Paper server environment.
+ * <p>
+ * The entity and location variants of the sync methods run the task on the main thread here, and on the thread of the
+ * region owning the entity or location on Folia (see {@link FoliaTaskManager} and {@link #create(Plugin)}), so plugin
+ * code written against them works on both.
  */
 public class PaperTaskManager extends TaskManager {
 
+    private static final long DEFAULT_SYNC_BUDGET_MICROS = 2000;
+
     private final Plugin plugin;
+    private final SyncTaskQueue syncTaskQueue;
+    private volatile Runnable syncTaskQueueCanceller;
+    private volatile boolean shutdown;
 
     /**
      * Creates a new PaperTaskManager.
@@ -19,10 +38,284 @@ public class PaperTaskManager extends TaskManager {
      */
     public PaperTaskManager(@NotNull Plugin plugin) {
         this.plugin = plugin;
+        this.syncTaskQueue = new SyncTaskQueue(plugin, DEFAULT_SYNC_BUDGET_MICROS);
+    }
+
+    /**
+     * Creates a new PaperTaskManager.
+     *
+     * @param plugin The plugin instance.
+     * @param config The worker pool configuration.
+     */
+    public PaperTaskManager(@NotNull Plugin plugin, @NotNull TaskExecutorConfig config) {
+        this(plugin, config, DEFAULT_SYNC_BUDGET_MICROS);
+    }
+
+    /**
+     * Creates a new PaperTaskManager.
+     *
+     * @param plugin           The plugin instance.
+     * @param config           The worker pool configuration.
+     * @param syncBudgetMicros The time in microseconds the queued sync tasks may use per tick (see
+     *                         {@link #queueTaskSync(Runnable)}).
+     */
+    public PaperTaskManager(@NotNull Plugin plugin, @NotNull TaskExecutorConfig config, long syncBudgetMicros) {
+        super(config);
+        this.plugin = plugin;
+        this.syncTaskQueue = new SyncTaskQueue(plugin, syncBudgetMicros);
+    }
+
+    /**
+     * Creates the task manager suited to the running server: a {@link FoliaTaskManager} on Folia, a PaperTaskManager
+     * otherwise.
+     *
+     * @param plugin The plugin instance.
+     * @return The created task manager.
+     */
+    @NotNull
+    public static PaperTaskManager create(@NotNull Plugin plugin) {
+        return FoliaTaskManager.isFolia() ? new FoliaTaskManager(plugin) : new PaperTaskManager(plugin);
+    }
+
+    /**
+     * Creates the task manager suited to the running server: a {@link FoliaTaskManager} on Folia, a PaperTaskManager
+     * otherwise.
+     *
+     * @param plugin The plugin instance.
+     * @param config The worker pool configuration.
+     * @return The created task manager.
+     */
+    @NotNull
+    public static PaperTaskManager create(@NotNull Plugin plugin, @NotNull TaskExecutorConfig config) {
+        return FoliaTaskManager.isFolia() ? new FoliaTaskManager(plugin, config) : new PaperTaskManager(plugin, config);
+    }
+
+    /**
+     * Gets the plugin instance.
+     *
+     * @return The plugin instance.
+     */
+    @NotNull
+    public Plugin getPlugin() {
+        return plugin;
     }
 
     @Override
     public void runTaskSync(@NotNull Runnable task) {
         Bukkit.getScheduler().runTask(plugin, task);
     }
+
+    /**
+     * Runs a task synchronously on the thread owning an entity.
+     *
+     * @param entity The entity.
+     * @param task   The task to run.
+     */
+    public void runTaskSync(@NotNull Entity entity, @NotNull Runnable task) {
+        runTaskSync(entity, task, null);
+    }
+
+    /**
+     * Runs a task synchronously on the thread owning an entity. If the entity has been removed (e.g. the player has
+     * quit, or the mob has died) when the task is due, the retired callback is run instead. A dead player is not
+     * removed until they quit, as they respawn.
+     *
+     * @param entity  The entity.
+     * @param task    The task to run.
+     * @param retired The callback run if the entity has been removed, or null.
+     */
+    public void runTaskSync(@NotNull Entity entity, @NotNull Runnable task, @Nullable Runnable retired) {
+        runTaskSync(() -> {
+            if (isPresent(entity)) {
+                task.run();
+            } else if (retired != null) {
+                retired.run();
+            }
+        });
+    }
+
+    /**
+     * Runs a task synchronously on the thread owning a location.
+     *
+     * @param location The location.
+     * @param task     The task to run.
+     */
+    public void runTaskSync(@NotNull Location location, @NotNull Runnable task) {
+        runTaskSync(task);
+    }
+
+    /**
+     * Runs a task synchronously on the thread owning an entity after a delay. The task is cancelled if the entity has
+     * been removed when it is due.
+     *
+     * @param entity The entity.
+     * @param task   The task to run.
+     * @param delay  The delay in milliseconds before running the task.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask runTaskLaterSync(@NotNull Entity entity, @NotNull Runnable task, long delay) {
+        return schedule(task, delay, 0, 1, (handle, execution) -> runTaskSync(entity, execution, handle::cancel));
+    }
+
+    /**
+     * Runs a task synchronously on the thread owning a location after a delay.
+     *
+     * @param location The location.
+     * @param task     The task to run.
+     * @param delay    The delay in milliseconds before running the task.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask runTaskLaterSync(@NotNull Location location, @NotNull Runnable task, long delay) {
+        return schedule(task, delay, 0, 1, (handle, execution) -> runTaskSync(location, execution));
+    }
+
+    /**
+     * Runs a task synchronously on the thread owning an entity at a fixed rate. The task is cancelled once the entity
+     * has been removed.
+     *
+     * @param entity       The entity.
+     * @param task         The task to run.
+     * @param initialDelay The initial delay in milliseconds before running the task.
+     * @param delay        The delay in milliseconds between successive executions.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask runTaskTimerSync(@NotNull Entity entity, @NotNull Runnable task, long initialDelay, long delay) {
+        return schedule(task, initialDelay, delay, 0, (handle, execution) -> runTaskSync(entity, execution, handle::cancel));
+    }
+
+    /**
+     * Runs a task synchronously on the thread owning a location at a fixed rate.
+     *
+     * @param location     The location.
+     * @param task         The task to run.
+     * @param initialDelay The initial delay in milliseconds before running the task.
+     * @param delay        The delay in milliseconds between successive executions.
+     * @return The scheduled task.
+     */
+    @NotNull
+    public ScheduledTask runTaskTimerSync(@NotNull Location location, @NotNull Runnable task, long initialDelay, long delay) {
+        return schedule(task, initialDelay, delay, 0, (handle, execution) -> runTaskSync(location, execution));
+    }
+
+    private static boolean isPresent(@NotNull Entity entity) {
+        // Entity#isValid is false while a player is dead, although they are still online and will respawn
+        return entity instanceof Player player ? player.isOnline() : entity.isValid();
+    }
+
+    @Override
+    public boolean isSyncThread() {
+        return Bukkit.isPrimaryThread();
+    }
+
+    /**
+     * Queues a task to run on the main thread under the per-tick time budget. Use this instead of
+     * {@link #runTaskSync(Runnable)} for bursts of work (e.g. refreshing every open menu) which may be spread over
+     * several ticks. Cancelling the returned task removes it from the queue.
+     *
+     * @param task The task to run.
+     * @return The scheduled task.
+     * @throws RejectedExecutionException If the task manager has been shut down.
+     */
+    @NotNull
+    public ScheduledTask queueTaskSync(@NotNull Runnable task) {
+        startSyncTaskQueue();
+        TaskHandle handle = new TaskHandle();
+        QueuedTask queued = new QueuedTask(handle, instrument(task));
+        syncTaskQueue.add(queued);
+        handle.setCanceller(() -> syncTaskQueue.remove(queued));
+        if (shutdown && syncTaskQueue.remove(queued)) {
+            // Shut down meanwhile, after the queue was drained
+            handle.cancel();
+            throw new RejectedExecutionException("Task manager is shut down");
+        }
+
+        return handle;
+    }
+
+    /**
+     * Gets the queue of the budgeted sync tasks (to tune its budget or read its statistics).
+     *
+     * @return The sync task queue.
+     */
+    @NotNull
+    public SyncTaskQueue getSyncTaskQueue() {
+        return syncTaskQueue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The queued sync tasks left are run immediately, so this should be called from the main thread (in onDisable).
+     * Called from another thread, they are cancelled instead.
+     */
+    @Override
+    public void shutdown() {
+        synchronized (syncTaskQueue) {
+            shutdown = true;
+            if (syncTaskQueueCanceller != null) {
+                syncTaskQueueCanceller.run();
+                syncTaskQueueCanceller = null;
+            }
+        }
+
+        if (isSyncThread()) {
+            syncTaskQueue.drainAll();
+        } else {
+            for (Runnable left : syncTaskQueue.clear()) {
+                if (left instanceof QueuedTask queued) {
+                    queued.handle.cancel();
+                }
+            }
+        }
+
+        super.shutdown();
+    }
+
+    /**
+     * Runs a task on the main thread every tick.
+     *
+     * @param task The task to run.
+     * @return The action cancelling the task.
+     */
+    @NotNull
+    protected Runnable runEveryTick(@NotNull Runnable task) {
+        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(plugin, task, 1L, 1L);
+        return bukkitTask::cancel;
+    }
+
+    private void startSyncTaskQueue() {
+        if (syncTaskQueueCanceller != null) return;
+
+        synchronized (syncTaskQueue) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Task manager is shut down");
+            }
+
+            if (syncTaskQueueCanceller == null) {
+                syncTaskQueueCanceller = runEveryTick(syncTaskQueue);
+            }
+        }
+    }
+
+    /**
+     * Task waiting in the sync task queue, known to the manager so that its handle can be cancelled at shutdown.
+     */
+    private static class QueuedTask implements Runnable {
+
+        private final TaskHandle handle;
+        private final Runnable task;
+
+        private QueuedTask(@NotNull TaskHandle handle, @NotNull Runnable task) {
+            this.handle = handle;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            handle.run(task, true);
+        }
+    }
 }
@@ -0,0 +1,222 @@
+package com.smoothresources.smoothbase.paper.task;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Queue of tasks run on the main thread under a per-tick time budget.
+ * <p>
+ * Every tick, queued tasks are run until the budget is spent; the remaining ones are left for the next tick, so a
+ * burst of work is spread over several ticks instead of causing a lag spike. At least one task runs per tick, so the
+ * queue always makes progress.
+ */
+public class SyncTaskQueue implements Runnable {
+
+    private final Plugin plugin;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger(0);
+    private volatile long budgetNanos;
+
+    private volatile long lastDrainNanos;
+    private volatile long maxDrainNanos;
+    private volatile double averageDrainNanos;
+    private volatile int lastDrainedCount;
+    private volatile long totalDrainedCount;
+
+    /**
+     * Creates a new SyncTaskQueue.
+     *
+     * @param plugin       The plugin instance (used to log failing tasks).
+     * @param budgetMicros The time in microseconds the queue may spend running tasks per tick.
+     */
+    public SyncTaskQueue(@NotNull Plugin plugin, long budgetMicros) {
+        this.plugin = plugin;
+        setBudgetMicros(budgetMicros);
+    }
+
+    /**
+     * Adds a task to the queue.
+     *
+     * @param task The task to run.
+     */
+    public void add(@NotNull Runnable task) {
+        queue.add(task);
+        depth.incrementAndGet();
+    }
+
+    /**
+     * Removes a task from the queue if it has not run yet (in a time linear in the queue depth).
+     *
+     * @param task The task to remove.
+     * @return True if the task was removed, false if it was not queued anymore.
+     */
+    public boolean remove(@NotNull Runnable task) {
+        if (!queue.remove(task)) {
+            return false;
+        }
+
+        depth.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Runs the queued tasks until the budget of the tick is spent. Must be called from the main thread, once per tick.
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long budget = budgetNanos;
+        int drained = 0;
+        long elapsed;
+
+        do {
+            Runnable task = queue.poll();
+            if (task == null) {
+                elapsed = System.nanoTime() - start;
+                break;
+            }
+
+            depth.decrementAndGet();
+            runSafely(task);
+            drained++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budget);
+
+        lastDrainNanos = elapsed;
+        lastDrainedCount = drained;
+        totalDrainedCount += drained;
+        if (elapsed > maxDrainNanos) {
+            maxDrainNanos = elapsed;
+        }
+
+        // Exponential moving average over roughly the last 100 ticks (5 seconds)
+        averageDrainNanos += (elapsed - averageDrainNanos) / 100;
+    }
+
+    /**
+     * Runs every queued task regardless of the budget. Must be called from the main thread.
+     */
+    public void drainAll() {
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            depth.decrementAndGet();
+            runSafely(task);
+        }
+    }
+
+    /**
+     * Removes every queued task without running it.
+     *
+     * @return The removed tasks.
+     */
+    @NotNull
+    public List<Runnable> clear() {
+        List<Runnable> removed = new ArrayList<>();
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            depth.decrementAndGet();
+            removed.add(task);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Sets the time the queue may spend running tasks per tick.
+     *
+     * @param budgetMicros The budget in microseconds.
+     */
+    public void setBudgetMicros(long budgetMicros) {
+        if (budgetMicros <= 0) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+    }
+
+    /**
+     * Gets the time the queue may spend running tasks per tick.
+     *
+     * @return The budget in microseconds.
+     */
+    public long getBudgetMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(budgetNanos);
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queue.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Gets the time spent running tasks during the last tick.
+     *
+     * @return The drain time in nanoseconds.
+     */
+    public long getLastDrainNanos() {
+        return lastDrainNanos;
+    }
+
+    /**
+     * Gets the longest time spent running tasks during a tick (since the last {@link #resetStatistics()}).
+     *
+     * @return The maximum drain time in nanoseconds.
+     */
+    public long getMaxDrainNanos() {
+        return maxDrainNanos;
+    }
+
+    /**
+     * Gets the average time spent running tasks per tick over roughly the last 100 ticks.
+     *
+     * @return The average drain time in nanoseconds.
+     */
+    public long getAverageDrainNanos() {
+        return (long) averageDrainNanos;
+    }
+
+    /**
+     * Gets the number of tasks run during the last tick.
+     *
+     * @return The number of tasks run during the last tick.
+     */
+    public int getLastDrainedCount() {
+        return lastDrainedCount;
+    }
+
+    /**
+     * Gets the number of tasks run since the queue was created.
+     *
+     * @return The total number of tasks run.
+     */
+    public long getTotalDrainedCount() {
+        return totalDrainedCount;
+    }
+
+    /**
+     * Resets the maximum drain time.
+     */
+    public void resetStatistics() {
+        maxDrainNanos = 0;
+    }
+
+    private void runSafely(@NotNull Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable throwable) {
+            plugin.getLogger().log(Level.SEVERE, "Exception while running a queued sync task", throwable);
+        }
+    }
+}
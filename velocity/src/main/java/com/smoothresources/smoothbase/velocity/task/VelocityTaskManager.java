@@ -1,17 +1,31 @@
 package com.smoothresources.smoothbase.velocity.task;
 
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.scheduler.Scheduler;
+import com.smoothresources.smoothbase.common.task.ScheduledTask;
+import com.smoothresources.smoothbase.common.task.TaskExecutorConfig;
+import com.smoothresources.smoothbase.common.task.TaskHandle;
 import com.smoothresources.smoothbase.common.task.TaskManager;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Task manager for executing tasks in a Velocity server environment.
+ * <p>
+ * Delayed and repeating tasks are scheduled on the Velocity scheduler, and the task manager is shut down
+ * automatically when the proxy shuts down.
  */
 public class VelocityTaskManager extends TaskManager {
 
     private final ProxyServer server;
     private final Object plugin;
-
+    private final Set<ScheduledTask> platformTasks = ConcurrentHashMap.newKeySet();
 
     /**
      * Creates a new VelocityTaskManager.
@@ -22,6 +36,21 @@ public class VelocityTaskManager extends TaskManager {
     public VelocityTaskManager(@NotNull ProxyServer server, @NotNull Object plugin) {
         this.server = server;
         this.plugin = plugin;
+        registerShutdownListener();
+    }
+
+    /**
+     * Creates a new VelocityTaskManager.
+     *
+     * @param server The ProxyServer instance.
+     * @param plugin The plugin instance.
+     * @param config The worker pool configuration.
+     */
+    public VelocityTaskManager(@NotNull ProxyServer server, @NotNull Object plugin, @NotNull TaskExecutorConfig config) {
+        super(config);
+        this.server = server;
+        this.plugin = plugin;
+        registerShutdownListener();
     }
 
     @Override
@@ -31,4 +60,85 @@ public class VelocityTaskManager extends TaskManager {
                 .buildTask(plugin, task)
                 .schedule();
     }
+
+    @NotNull
+    @Override
+    public ScheduledTask runTaskLaterSync(@NotNull Runnable task, long delay) {
+        return schedulePlatform(task, delay, 0, 1);
+    }
+
+    @NotNull
+    @Override
+    public ScheduledTask runTaskLaterAsync(@NotNull Runnable task, long delay) {
+        return schedulePlatform(task, delay, 0, 1);
+    }
+
+    @NotNull
+    @Override
+    public ScheduledTask runTaskTimerSync(@NotNull Runnable task, long initialDelay, long delay) {
+        return schedulePlatform(task, initialDelay, delay, 0);
+    }
+
+    @NotNull
+    @Override
+    public ScheduledTask runTaskTimerSync(@NotNull Runnable task, long initialDelay, long delay, int times) {
+        return schedulePlatform(task, initialDelay, delay, times);
+    }
+
+    @NotNull
+    @Override
+    public ScheduledTask runTaskTimerAsync(@NotNull Runnable task, long initialDelay, long delay) {
+        return schedulePlatform(task, initialDelay, delay, 0);
+    }
+
+    @NotNull
+    @Override
+    public ScheduledTask runTaskTimerAsync(@NotNull Runnable task, long initialDelay, long delay, int times) {
+        return schedulePlatform(task, initialDelay, delay, times);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The delayed and repeating tasks scheduled on the Velocity scheduler are cancelled as well.
+     */
+    @Override
+    public void shutdown() {
+        for (ScheduledTask task : platformTasks) {
+            task.cancel();
+        }
+
+        super.shutdown();
+    }
+
+    @NotNull
+    private ScheduledTask schedulePlatform(@NotNull Runnable task, long initialDelay, long period, int times) {
+        TaskHandle handle = new TaskHandle();
+        AtomicInteger timesFired = new AtomicInteger(0);
+
+        Scheduler.TaskBuilder builder = server.getScheduler()
+                .buildTask(plugin, () -> {
+                    boolean last = period == 0 || (times > 0 && timesFired.incrementAndGet() >= times);
+                    handle.run(instrument(task), last);
+                })
+                .delay(initialDelay, TimeUnit.MILLISECONDS);
+        if (period > 0) {
+            builder.repeat(period, TimeUnit.MILLISECONDS);
+        }
+
+        com.velocitypowered.api.scheduler.ScheduledTask velocityTask = builder.schedule();
+        handle.setCanceller(velocityTask::cancel);
+        if (period > 0 && times > 0) {
+            // Stop the repeating Velocity task once the last execution has run
+            handle.onComplete(completed -> velocityTask.cancel());
+        }
+
+        platformTasks.add(handle);
+        handle.onComplete(platformTasks::remove);
+        return handle;
+    }
+
+    private void registerShutdownListener() {
+        server.getEventManager().register(plugin, ProxyShutdownEvent.class, PostOrder.LAST, event -> shutdown());
+    }
 }